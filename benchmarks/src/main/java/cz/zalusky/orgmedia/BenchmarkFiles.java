@@ -0,0 +1,47 @@
+package cz.zalusky.orgmedia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.google.common.io.Files;
+
+/**
+ * Temporary directories of benchmarks.
+ * @author Tomas Zalusky
+ */
+class BenchmarkFiles {
+
+	static File createTempDirectory(String prefix) {
+		try {
+			return java.nio.file.Files.createTempDirectory(prefix).toFile();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static File write(File file, byte[] content) {
+		try {
+			Files.createParentDirs(file);
+			Files.write(content,file);
+			return file;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static void deleteRecursively(File dir) {
+		if (dir == null || !dir.exists()) {
+			return;
+		}
+		try (Stream<Path> paths = java.nio.file.Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package cz.zalusky.orgmedia;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classification of 1000 names by patterns of conversions, about one name in ten is invalid.
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassificationBenchmark {
+
+	private static final int NAMES = 1000;
+
+	private String[] canonDirectories;
+
+	private String[] canonFiles;
+
+	private String[] samsungFiles;
+
+	private String[] huaweiXiaomiFiles;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(0);
+		canonDirectories = new String[NAMES];
+		canonFiles = new String[NAMES];
+		samsungFiles = new String[NAMES];
+		huaweiXiaomiFiles = new String[NAMES];
+		String[] huaweiXiaomiPrefixes = {"IMG", "PANO", "VID", "SL_MO_VID"};
+		for (int i = 0; i < NAMES; i++) {
+			boolean invalid = random.nextInt(10) == 0;
+			int month = 1 + random.nextInt(12);
+			int day = 1 + random.nextInt(28);
+			canonDirectories[i] = invalid ? "misc" : String.format("2015_%02d_%02d",month,day);
+			canonFiles[i] = invalid ? String.format("IMG_%04d.THM",i) : String.format(i % 5 == 0 ? "MVI_%04d.AVI" : "IMG_%04d.JPG",i);
+			samsungFiles[i] = invalid ? "Screenshot.png" : String.format("2015%02d%02d_%06d%s.%s",month,day,random.nextInt(240000),i % 7 == 0 ? "(1)" : "",i % 5 == 0 ? "mp4" : "jpg");
+			huaweiXiaomiFiles[i] = invalid ? "thumbnail.db" : String.format("%s_2015%02d%02d_%06d.%s",huaweiXiaomiPrefixes[i % 4],month,day,random.nextInt(240000),i % 5 == 0 ? "mp4" : "jpg");
+		}
+	}
+
+	@Benchmark
+	public int canonDayDirectory() {
+		return count(Canon1Conversion.DAY_DIRECTORY,canonDirectories);
+	}
+
+	@Benchmark
+	public int canonValidFiles() {
+		return count(Canon1Conversion.VALID_FILES,canonFiles);
+	}
+
+	@Benchmark
+	public int canonThumbnails() {
+		return count(Canon1Conversion.THUMBNAIL,canonFiles);
+	}
+
+	@Benchmark
+	public int samsungValidFiles() {
+		return count(Samsung1Conversion.VALID_FILES,samsungFiles);
+	}
+
+	@Benchmark
+	public int huaweiXiaomiValidFiles() {
+		return count(HuaweiXiaomi1Conversion.VALID_FILES,huaweiXiaomiFiles);
+	}
+
+	private static int count(Pattern pattern, String[] names) {
+		int result = 0;
+		for (String name : names) {
+			if (pattern.matcher(name).matches()) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,81 @@
+package cz.zalusky.orgmedia;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cz.zalusky.orgmedia.MediaTreeGenerator.Layout;
+
+/**
+ * Full conversion of synthetic trees made by {@link MediaTreeGenerator}, the trees are generated anew before each iteration.
+ * Files are sparse, spread into 30 days, one in ten has duplicate in target and one in twenty has name collision in target.
+ * Sizes are smaller than generator defaults (photos 64 kB - 1 MB, videos 1 - 16 MB), so that full reads of duplicates do not dominate.
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ExecuteBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	int files;
+
+	@Param({"CANON", "SAMSUNG", "HUAWEI_XIAOMI"})
+	Layout layout;
+
+	@Param({"1", "4"})
+	int workers;
+
+	private File root;
+
+	private File source;
+
+	private File target;
+
+	private Conversion conversion;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		root = BenchmarkFiles.createTempDirectory("orgmedia-execute");
+		source = new File(root,"source");
+		target = new File(root,"target");
+		MediaTreeGenerator generator = new MediaTreeGenerator(layout);
+		generator.setSeed(files);
+		generator.setFiles(files);
+		generator.setDuplicateRatio(0.1);
+		generator.setCollisionRatio(0.05);
+		generator.setPhotoSizes(64 << 10,1 << 20);
+		generator.setVideoSizes(1 << 20,16 << 20);
+		generator.generate(source.toPath(),target.toPath());
+		conversion = layout.newConversion();
+		conversion.setKeepReportContent(false);
+		conversion.setWorkers(workers);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		BenchmarkFiles.deleteRecursively(root);
+	}
+
+	@Benchmark
+	public Report execute() {
+		return conversion.execute(source.toPath(),target.toPath());
+	}
+
+}
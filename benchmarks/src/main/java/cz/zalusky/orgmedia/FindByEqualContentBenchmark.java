@@ -0,0 +1,95 @@
+package cz.zalusky.orgmedia;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Search of file with equal content in target day directory, where every other file has the same size as the searched one.
+ * Warm search uses index already reconciled with the directory, cold search starts with fresh index and has to read samples.
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FindByEqualContentBenchmark {
+
+	@Param({"10", "100", "1000"})
+	int filesInDirectory;
+
+	@Param({"65536"})
+	int fileSize;
+
+	@Param({"true", "false"})
+	boolean verifyContent;
+
+	private File root;
+
+	private Path target;
+
+	private Path day;
+
+	private Path searched;
+
+	private Conversion conversion;
+
+	private TargetState warmState;
+
+	@Setup
+	public void setUp() {
+		root = BenchmarkFiles.createTempDirectory("orgmedia-find");
+		target = root.toPath().resolve("target");
+		day = target.resolve("201512/20151210");
+		Random random = new Random(filesInDirectory);
+		byte[] content = null;
+		for (int i = 0; i < filesInDirectory; i++) {
+			content = new byte[i % 2 == 0 ? fileSize : fileSize + 1];
+			random.nextBytes(content);
+			BenchmarkFiles.write(day.resolve(String.format("IMG_%04d.JPG",i)).toFile(),content);
+		}
+		searched = BenchmarkFiles.write(new File(root,"source/IMG_9999.JPG"),content).toPath();
+		conversion = new Samsung1Conversion();
+		conversion.setVerifyContent(verifyContent);
+		RunMetrics metrics = new RunMetrics();
+		warmState = new TargetState(ContentIndex.load(target,metrics),metrics);
+		warmState.names(day);
+		conversion.findByEqualContent(warmState,day,searched);
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkFiles.deleteRecursively(root);
+	}
+
+	@Benchmark
+	public Set<Path> warm() {
+		return conversion.findByEqualContent(warmState,day,searched);
+	}
+
+	@Benchmark
+	public Set<Path> cold() {
+		RunMetrics metrics = new RunMetrics();
+		TargetState state = new TargetState(ContentIndex.load(target,metrics),metrics);
+		state.names(day);
+		return conversion.findByEqualContent(state,day,searched);
+	}
+
+}
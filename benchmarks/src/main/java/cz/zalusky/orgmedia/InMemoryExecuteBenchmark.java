@@ -0,0 +1,90 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import cz.zalusky.orgmedia.MediaTreeGenerator.Layout;
+
+/**
+ * Full conversion of synthetic trees like {@link ExecuteBenchmark}, but in in-memory file system, so that cost of the engine itself is measured
+ * without disk noise. In-memory file system does not support sparse files, sizes are therefore small (photos 4 - 64 kB, videos 64 - 256 kB).
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class InMemoryExecuteBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	int files;
+
+	@Param({"CANON", "SAMSUNG", "HUAWEI_XIAOMI"})
+	Layout layout;
+
+	@Param({"1", "4"})
+	int workers;
+
+	private FileSystem fileSystem;
+
+	private Path source;
+
+	private Path target;
+
+	private Conversion conversion;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		fileSystem = Jimfs.newFileSystem(Configuration.unix());
+		source = fileSystem.getPath("/source");
+		target = fileSystem.getPath("/target");
+		MediaTreeGenerator generator = new MediaTreeGenerator(layout);
+		generator.setSeed(files);
+		generator.setFiles(files);
+		generator.setDuplicateRatio(0.1);
+		generator.setCollisionRatio(0.05);
+		generator.setPhotoSizes(4 << 10,64 << 10);
+		generator.setVideoSizes(64 << 10,256 << 10);
+		generator.generate(source,target);
+		conversion = layout.newConversion();
+		conversion.setKeepReportContent(false);
+		conversion.setWorkers(workers);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		try {
+			fileSystem.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Benchmark
+	public Report execute() {
+		return conversion.execute(source,target);
+	}
+
+}
@@ -0,0 +1,60 @@
+package cz.zalusky.orgmedia;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution of burst of equal names moved into the same directory, e.g. {@code IMG_0001.JPG} from several cameras.
+ * The regex loop is the resolution used before {@link DirectoryNames}, kept for comparison, without any disk access.
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenameBenchmark {
+
+	private static final String NAME = "IMG_0001.JPG";
+
+	@Param({"10", "100", "1000"})
+	int burst;
+
+	@Benchmark
+	public DirectoryNames allocator() {
+		DirectoryNames names = new DirectoryNames();
+		names.add(NAME);
+		for (int i = 0; i < burst; i++) {
+			names.add(names.allocate(NAME));
+		}
+		return names;
+	}
+
+	@Benchmark
+	public Set<String> regexLoop() {
+		Set<String> names = new HashSet<>();
+		names.add(NAME);
+		for (int i = 0; i < burst; i++) {
+			String newName = NAME;
+			do {
+				newName = newName.replaceAll("(.*)(\\..*)","$1_$2");
+			} while (names.contains(newName));
+			names.add(newName);
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,93 @@
+package cz.zalusky.orgmedia;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cz.zalusky.orgmedia.Report.Type;
+
+/**
+ * Reporting of moves: counting only, formatting of content kept in memory, streaming into log file.
+ * @author Tomas Zalusky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+
+	@Param({"10000"})
+	int entries;
+
+	private File root;
+
+	private File[] sources;
+
+	private File[] targets;
+
+	@Setup
+	public void setUp() {
+		root = BenchmarkFiles.createTempDirectory("orgmedia-report");
+		sources = new File[entries];
+		targets = new File[entries];
+		for (int i = 0; i < entries; i++) {
+			sources[i] = new File(root,String.format("source/20151210_%06d.jpg",i));
+			targets[i] = new File(root,String.format("target/201512/20151210/20151210_%06d.jpg",i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkFiles.deleteRecursively(root);
+	}
+
+	@Benchmark
+	public String counting() {
+		Report report = new Report(false);
+		fill(report);
+		return report.getSummary();
+	}
+
+	@Benchmark
+	public int formatting() {
+		Report report = new Report(true);
+		fill(report);
+		int length = 0;
+		List<String> content = report.getContent();
+		for (String line : content) {
+			length += line.length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public Report logFile() {
+		Report report = new Report(false);
+		report.openLogFile(new File(root,"report.log").toPath(),new File(root,"source").toPath(),new File(root,"target").toPath());
+		fill(report);
+		report.closeLogFile();
+		return report;
+	}
+
+	private void fill(Report report) {
+		for (int i = 0; i < entries; i++) {
+			report.add(Type.MOVED,"file %s moved into %s",sources[i],targets[i]);
+		}
+	}
+
+}
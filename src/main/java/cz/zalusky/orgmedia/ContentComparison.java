@@ -0,0 +1,194 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Byte by byte comparison of file content over memory-mapped regions.
+ * Files are split into chunks compared in parallel, the comparison stops on the first mismatch in any chunk,
+ * chunks not started yet are not mapped at all.
+ * <p>
+ * Regions are unmapped as soon as they are compared where the JVM allows it, so that compared files can be moved or deleted
+ * on platforms which do not permit it for mapped files. Files of file systems which do not support mapping are compared by reading.
+ * @author Tomas Zalusky
+ */
+class ContentComparison {
+
+	static final int CHUNK_SIZE = 64 << 20;
+
+	/**
+	 * Bytes compared between checks whether other chunk has already found a mismatch.
+	 */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private static final Unmapper UNMAPPER = Unmapper.create();
+
+	private ContentComparison() {
+	}
+
+	/**
+	 * @param bytesRead counter of bytes read from both files, chunks skipped after mismatch are not counted
+	 */
+	static boolean equal(Path file1, Path file2, LongAdder bytesRead) throws IOException {
+		return equal(file1,file2,CHUNK_SIZE,bytesRead);
+	}
+
+	static boolean equal(Path file1, Path file2, int chunkSize, LongAdder bytesRead) throws IOException {
+		Preconditions.checkArgument(chunkSize > 0,"Invalid chunk size %s",chunkSize);
+		try (FileChannel channel1 = FileChannel.open(file1,StandardOpenOption.READ);
+				FileChannel channel2 = FileChannel.open(file2,StandardOpenOption.READ)) {
+			long size = channel1.size();
+			if (size != channel2.size()) {
+				return false;
+			}
+			int chunks = (int)((size + chunkSize - 1) / chunkSize);
+			AtomicBoolean mismatch = new AtomicBoolean();
+			IntStream indexes = IntStream.range(0,chunks);
+			return (chunks > 1 ? indexes.parallel() : indexes).allMatch(i -> {
+				long position = (long)i * chunkSize;
+				try {
+					return equalChunk(channel1,channel2,position,Math.min(chunkSize,size - position),mismatch,bytesRead);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static boolean equalChunk(FileChannel channel1, FileChannel channel2, long position, long length,
+			AtomicBoolean mismatch, LongAdder bytesRead) throws IOException {
+		if (mismatch.get()) {
+			return false;
+		}
+		MappedByteBuffer buffer1;
+		try {
+			buffer1 = channel1.map(MapMode.READ_ONLY,position,length);
+		} catch (UnsupportedOperationException e) { // file system without mapping, e.g. in-memory or zip
+			return equalChunkRead(channel1,channel2,position,length,mismatch,bytesRead);
+		}
+		MappedByteBuffer buffer2 = null;
+		try {
+			buffer2 = channel2.map(MapMode.READ_ONLY,position,length);
+			for (int block = 0; block < length; block += BLOCK_SIZE) {
+				int end = (int)Math.min(length,block + BLOCK_SIZE);
+				boolean equal = equalBlock(buffer1,buffer2,block,end);
+				bytesRead.add(2L * (end - block));
+				if (!equal) {
+					mismatch.set(true);
+					return false;
+				}
+				if (mismatch.get()) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			UNMAPPER.unmap(buffer1);
+			if (buffer2 != null) {
+				UNMAPPER.unmap(buffer2);
+			}
+		}
+	}
+
+	private static boolean equalChunkRead(FileChannel channel1, FileChannel channel2, long position, long length,
+			AtomicBoolean mismatch, LongAdder bytesRead) throws IOException {
+		byte[] bytes1 = new byte[(int)Math.min(length,BLOCK_SIZE)];
+		byte[] bytes2 = new byte[bytes1.length];
+		for (long block = 0; block < length; block += BLOCK_SIZE) {
+			int blockLength = (int)Math.min(length - block,BLOCK_SIZE);
+			ByteBuffer buffer1 = ByteBuffer.wrap(bytes1,0,blockLength);
+			ByteBuffer buffer2 = ByteBuffer.wrap(bytes2,0,blockLength);
+			readFully(channel1,buffer1,position + block);
+			readFully(channel2,buffer2,position + block);
+			boolean equal = equalBlock(buffer1,buffer2,0,blockLength);
+			bytesRead.add(2L * blockLength);
+			if (!equal) {
+				mismatch.set(true);
+				return false;
+			}
+			if (mismatch.get()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer,position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	private static boolean equalBlock(ByteBuffer buffer1, ByteBuffer buffer2, int start, int end) {
+		int i = start;
+		for (; i + Long.BYTES <= end; i += Long.BYTES) {
+			if (buffer1.getLong(i) != buffer2.getLong(i)) {
+				return false;
+			}
+		}
+		for (; i < end; i++) {
+			if (buffer1.get(i) != buffer2.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Releases mapped buffer through internal API of the JVM, {@code sun.misc.Unsafe.invokeCleaner} since Java 9,
+	 * cleaner of direct buffer in Java 8. When neither is available, the buffer is released by garbage collector.
+	 */
+	private interface Unmapper {
+
+		void unmap(MappedByteBuffer buffer);
+
+		static Unmapper create() {
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				Object unsafe = theUnsafe.get(null);
+				return buffer -> {
+					try {
+						invokeCleaner.invoke(unsafe,buffer);
+					} catch (ReflectiveOperationException | RuntimeException e) {
+						// left to garbage collector
+					}
+				};
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return buffer -> {
+					try {
+						Method cleaner = buffer.getClass().getMethod("cleaner");
+						cleaner.setAccessible(true);
+						Object c = cleaner.invoke(buffer);
+						if (c != null) {
+							c.getClass().getMethod("clean").invoke(c);
+						}
+					} catch (ReflectiveOperationException | RuntimeException e2) {
+						// left to garbage collector
+					}
+				};
+			}
+		}
+
+	}
+
+}
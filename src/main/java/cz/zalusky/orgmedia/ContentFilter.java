@@ -0,0 +1,150 @@
+package cz.zalusky.orgmedia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+
+/**
+ * Bloom filter over size and head/tail sample of all files of the library, answering in memory that content is not in the library.
+ * Files whose sample has not been computed yet cannot be put into the filter, their sizes are tracked instead
+ * and the filter gives no answer for such size.
+ * <p>
+ * Filter is persisted beside the {@link ContentIndex} together with length and modification time of the index file it belongs to,
+ * filter which does not belong to the current index file or was created with different settings is not used.
+ * Since files cannot be removed from Bloom filter, files deleted from library only increase false positive rate until the filter is rebuilt.
+ * <p>
+ * Guava {@link BloomFilter} is not thread-safe, bits set concurrently would be lost and cause false negatives,
+ * all accesses to the filter are therefore synchronized on this object.
+ * @author Tomas Zalusky
+ */
+class ContentFilter {
+
+	static final String FILE_NAME = ".orgmedia-bloom";
+
+	private static final int VERSION = 1;
+
+	private static final int MIN_EXPECTED_FILES = 1024;
+
+	private static final Funnel<Key> FUNNEL = (key,into) -> into.putLong(key.size).putBytes(key.sample.asBytes());
+
+	private final BloomFilter<Key> filter;
+
+	private final double falsePositiveRate;
+
+	private final long expectedFiles;
+
+	private final Multiset<Long> unsampledSizes = ConcurrentHashMultiset.create();
+
+	private ContentFilter(BloomFilter<Key> filter, double falsePositiveRate, long expectedFiles) {
+		this.filter = filter;
+		this.falsePositiveRate = falsePositiveRate;
+		this.expectedFiles = expectedFiles;
+	}
+
+	/**
+	 * Creates empty filter for given number of files, reduced when the filter would not fit into given memory.
+	 * Twice the number of files is reserved so that the library may grow without loss of precision.
+	 */
+	static ContentFilter create(long files, double falsePositiveRate, long maxBytes) {
+		long expectedFiles = expectedFiles(files,falsePositiveRate,maxBytes);
+		return new ContentFilter(BloomFilter.create(FUNNEL,(int)expectedFiles,falsePositiveRate),falsePositiveRate,expectedFiles);
+	}
+
+	static long expectedFiles(long files, double falsePositiveRate, long maxBytes) {
+		Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1,"Invalid false positive rate %s",falsePositiveRate);
+		Preconditions.checkArgument(maxBytes > 0,"Invalid memory budget %s",maxBytes);
+		double bitsPerFile = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long fitting = (long)(maxBytes * 8 / bitsPerFile);
+		return Math.max(1,Math.min(Math.min(Math.max(2 * files,MIN_EXPECTED_FILES),fitting),Integer.MAX_VALUE));
+	}
+
+	/**
+	 * @return filter persisted for index file of given length and modification time with given settings, {@code null} if there is no such filter
+	 */
+	static ContentFilter read(Path root, long indexLength, long indexLastModified, long files, double falsePositiveRate, long maxBytes) {
+		Path filterFile = root.resolve(FILE_NAME);
+		if (!Files.isRegularFile(filterFile)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterFile)))) {
+			if (in.readInt() != VERSION || in.readLong() != indexLength || in.readLong() != indexLastModified
+					|| in.readDouble() != falsePositiveRate || in.readLong() != expectedFiles(files,falsePositiveRate,maxBytes)) {
+				return null;
+			}
+			return new ContentFilter(BloomFilter.readFrom(in,FUNNEL),falsePositiveRate,expectedFiles(files,falsePositiveRate,maxBytes));
+		} catch (IOException | RuntimeException e) {
+			return null; // corrupted filter is rebuilt from index
+		}
+	}
+
+	synchronized void write(Path root, long indexLength, long indexLastModified) {
+		Path filterFile = root.resolve(FILE_NAME);
+		Path temporaryFile = root.resolve(FILE_NAME + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+				out.writeInt(VERSION);
+				out.writeLong(indexLength);
+				out.writeLong(indexLastModified);
+				out.writeDouble(falsePositiveRate);
+				out.writeLong(expectedFiles);
+				filter.writeTo(out);
+			}
+			Files.move(temporaryFile,filterFile,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	synchronized void put(long size, HashCode sample) {
+		filter.put(new Key(size,sample));
+	}
+
+	void addUnsampled(long size) {
+		unsampledSizes.add(size);
+	}
+
+	void removeUnsampled(long size) {
+		unsampledSizes.remove(size);
+	}
+
+	/**
+	 * @return {@code true} when there is a file of given size whose sample is not known, so that the filter cannot decide
+	 */
+	boolean hasUnsampled(long size) {
+		return unsampledSizes.contains(size);
+	}
+
+	/**
+	 * @return {@code false} when there is certainly no file of given size and sample in the library
+	 */
+	synchronized boolean mightContain(long size, HashCode sample) {
+		return filter.mightContain(new Key(size,sample));
+	}
+
+	private static class Key {
+
+		final long size;
+
+		final HashCode sample;
+
+		Key(long size, HashCode sample) {
+			this.size = size;
+			this.sample = sample;
+		}
+
+	}
+
+}
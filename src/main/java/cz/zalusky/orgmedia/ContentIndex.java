@@ -0,0 +1,691 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Persistent index of content hashes of files in target directories.
+ * The index is stored in the target root and reconciled with each directory at most once per run,
+ * files which did not change their size and modification time since last run are not read again.
+ * <p>
+ * Candidates are filtered in stages: by size, by hash of head and tail sample, by hash of full content.
+ * Samples and full hashes are computed lazily, only for candidates which survived previous stage.
+ * When {@link #enableContentFilter(double, long) enabled}, candidates of equal size are first checked against {@link ContentFilter}
+ * so that content new to the library is recognized without reading any target file.
+ * <p>
+ * Index may be used by several workers concurrently as long as each directory is used by single worker,
+ * entries of other directories found by global lookup may be hashed by several workers concurrently.
+ * @author Tomas Zalusky
+ */
+public class ContentIndex {
+
+	static final String FILE_NAME = ".orgmedia-index";
+
+	static final int SAMPLE_SIZE = 4096;
+
+	private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+
+	private static final Splitter TAB_SPLITTER = Splitter.on('\t').limit(5);
+
+	private static final Joiner TAB_JOINER = Joiner.on('\t');
+
+	private static final String NOT_COMPUTED = "-";
+
+	/**
+	 * First line of index file of library whose all directories have been indexed.
+	 */
+	private static final String LIBRARY_INDEXED = "#library-indexed";
+
+	private final Path root;
+
+	/**
+	 * Relative directory path -> file name -> entry.
+	 */
+	private final Map<String,Map<String,Entry>> directories;
+
+	private final Set<String> reconciledDirectories = ConcurrentHashMap.newKeySet();
+
+	private final Map<Path,Entry> sourceEntries = new ConcurrentHashMap<>();
+
+	/**
+	 * Size -> entries of the whole library, {@code null} unless global lookup is enabled.
+	 */
+	private volatile Map<Long,Set<Entry>> bySize;
+
+	/**
+	 * {@code null} unless content filter is enabled.
+	 */
+	private volatile ContentFilter filter;
+
+	private volatile boolean filterDirty;
+
+	/**
+	 * Whether the index holds all directories of the library, not only directories used by runs without global lookup.
+	 */
+	private boolean libraryIndexed;
+
+	/**
+	 * Length and modification time of the index file when it was last read or written, zero when there is no index file.
+	 */
+	private long indexLength;
+
+	private long indexLastModified;
+
+	private final DedupStatistics statistics = new DedupStatistics();
+
+	private final RunMetrics metrics;
+
+	private volatile boolean dirty;
+
+	private ContentIndex(Path root, RunMetrics metrics) {
+		this.root = root;
+		this.metrics = metrics;
+		this.directories = new ConcurrentSkipListMap<>();
+	}
+
+	/**
+	 * Index of next run sharing entries of given index, directories are reconciled again.
+	 */
+	private ContentIndex(ContentIndex previous, RunMetrics metrics) {
+		this.root = previous.root;
+		this.metrics = metrics;
+		this.directories = previous.directories;
+		this.filter = previous.filter;
+		this.filterDirty = previous.filterDirty;
+		this.indexLength = previous.indexLength;
+		this.indexLastModified = previous.indexLastModified;
+		this.libraryIndexed = previous.libraryIndexed;
+		directories.values().forEach(entries -> entries.values().forEach(entry -> entry.location = null)); // planned moves have been performed or failed
+	}
+
+	public static ContentIndex load(Path root) {
+		return load(root,new RunMetrics());
+	}
+
+	/**
+	 * @param metrics metrics of the run, where listings, stats and bytes read are counted
+	 */
+	public static ContentIndex load(Path root, RunMetrics metrics) {
+		ContentIndex result = new ContentIndex(root,metrics);
+		Path indexFile = root.resolve(FILE_NAME);
+		if (Files.isRegularFile(indexFile)) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(indexFile,BasicFileAttributes.class);
+				result.indexLength = attributes.size();
+				result.indexLastModified = attributes.lastModifiedTime().toMillis();
+				for (String line : Files.readAllLines(indexFile,Charsets.UTF_8)) {
+					if (LIBRARY_INDEXED.equals(line)) {
+						result.libraryIndexed = true;
+						continue;
+					}
+					List<String> fields = TAB_SPLITTER.splitToList(line);
+					if (fields.size() != 5) {
+						result.dirty = true; // corrupted line, will be rebuilt from directory
+						continue;
+					}
+					Entry entry = new Entry(Long.parseLong(fields.get(2)),Long.parseLong(fields.get(3)));
+					entry.hash = parseHash(fields.get(0));
+					entry.sample = parseHash(fields.get(1));
+					String relativePath = fields.get(4);
+					int slash = relativePath.lastIndexOf('/');
+					String directory = slash == -1 ? "" : relativePath.substring(0,slash);
+					String name = relativePath.substring(slash + 1);
+					result.put(directory,name,entry);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Index for next run into the same target in long-running process, reusing entries held in memory including computed hashes,
+	 * so that the index file is not read again. Directories are reconciled again when used, since target may have changed between runs.
+	 * @return {@code null} when the index file has been changed by other process meanwhile, the index has to be loaded then
+	 */
+	ContentIndex reuse(RunMetrics metrics) {
+		Path indexFile = root.resolve(FILE_NAME);
+		long length = 0;
+		long lastModified = 0;
+		try {
+			metrics.stats.increment();
+			BasicFileAttributes attributes = Files.readAttributes(indexFile,BasicFileAttributes.class);
+			length = attributes.size();
+			lastModified = attributes.lastModifiedTime().toMillis();
+		} catch (IOException e) {
+			// no index file
+		}
+		if (dirty || length != indexLength || lastModified != indexLastModified) {
+			return null;
+		}
+		return new ContentIndex(this,metrics);
+	}
+
+	/**
+	 * Finds files in given directory whose content hash equals to hash of searched file.
+	 */
+	public Set<Path> find(Path dir, Path searched) throws IOException {
+		Map<String,Entry> entries = reconcile(dir);
+		Entry searchedEntry = sourceEntry(searched);
+		Map<Path,Entry> candidates = new LinkedHashMap<>();
+		for (Map.Entry<String,Entry> e : entries.entrySet()) {
+			statistics.candidates.increment();
+			Entry candidate = e.getValue();
+			if (candidate.size != searchedEntry.size) {
+				statistics.eliminatedBySize.increment();
+				continue;
+			}
+			candidates.put(dir.resolve(e.getKey()),candidate);
+		}
+		return find(candidates,searched,searchedEntry);
+	}
+
+	private Set<Path> find(Map<Path,Entry> candidates, Path searched, Entry searchedEntry) throws IOException {
+		Set<Path> result = new HashSet<>();
+		if (candidates.isEmpty()) {
+			return result;
+		}
+		if (!mightContain(searched,searchedEntry)) {
+			statistics.eliminatedByFilter.add(candidates.size());
+			return result;
+		}
+		for (Map.Entry<Path,Entry> e : candidates.entrySet()) {
+			if (hasEqualHash(e.getKey(),e.getValue(),searched,searchedEntry)) {
+				result.add(e.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return {@code false} when content filter proves that content of searched file is not in the library
+	 */
+	private boolean mightContain(Path searched, Entry searchedEntry) throws IOException {
+		ContentFilter contentFilter = filter;
+		return contentFilter == null || contentFilter.hasUnsampled(searchedEntry.size)
+				|| contentFilter.mightContain(searchedEntry.size,sample(searched,searchedEntry));
+	}
+
+	/**
+	 * Fronts lookups by Bloom filter over size and sample of all files of the library.
+	 * The filter persisted with the index is used if it belongs to the index file and settings, otherwise it is built from the index.
+	 * @param falsePositiveRate rate of content new to the library which still has to be compared with target files
+	 * @param maxBytes memory budget of the filter; when the library is too large for the budget, the false positive rate rises
+	 */
+	public void enableContentFilter(double falsePositiveRate, long maxBytes) {
+		if (filter != null) {
+			return;
+		}
+		long files = directories.values().stream().mapToLong(Map::size).sum();
+		ContentFilter contentFilter = ContentFilter.read(root,indexLength,indexLastModified,files,falsePositiveRate,maxBytes);
+		boolean read = contentFilter != null;
+		if (!read) {
+			contentFilter = ContentFilter.create(files,falsePositiveRate,maxBytes);
+			filterDirty = true;
+		}
+		for (Map<String,Entry> entries : directories.values()) {
+			for (Entry entry : entries.values()) {
+				if (entry.sample == null) {
+					contentFilter.addUnsampled(entry.size);
+				} else if (!read) {
+					contentFilter.put(entry.size,entry.sample);
+				}
+			}
+		}
+		filter = contentFilter;
+	}
+
+	/**
+	 * Starts to maintain index of entries by size, so that files with equal content can be found anywhere in the library
+	 * by {@link #findElsewhere(Path, Path)}. Persisted index is trusted for directories not used by the run, so that cost of lookup
+	 * does not grow with size of the library; directory of candidate of equal size is reconciled when the candidate is looked up.
+	 * Unless the persisted index is known to hold all directories of the library, which is not the case when it has been built
+	 * by runs without global lookup, all directories of the library are reconciled in single walk to complete it.
+	 */
+	public void enableGlobalLookup() {
+		if (bySize != null) {
+			return;
+		}
+		Map<Long,Set<Entry>> index = new ConcurrentHashMap<>();
+		directories.values().forEach(entries -> entries.values().forEach(entry -> addBySize(index,entry)));
+		bySize = index;
+		if (!libraryIndexed) {
+			reconcileRecursively();
+			libraryIndexed = true;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Finds files in the whole library except given directory whose content hash equals to hash of searched file.
+	 * Files planned to be moved into target by this run are not considered, only files already present in the library.
+	 */
+	public Set<Path> findElsewhere(Path dir, Path searched) throws IOException {
+		Preconditions.checkState(bySize != null,"Global lookup is not enabled");
+		String relativeDirectory = relativize(dir);
+		Entry searchedEntry = sourceEntry(searched);
+		Set<String> unreconciled = new HashSet<>();
+		for (Entry candidate : bySize.getOrDefault(searchedEntry.size,Collections.emptySet())) {
+			if (!reconciledDirectories.contains(candidate.directory)) {
+				unreconciled.add(candidate.directory);
+			}
+		}
+		for (String directory : unreconciled) { // candidates may be stale, their directories are reconciled once per run
+			reconcileElsewhere(directory);
+		}
+		Map<Path,Entry> candidates = new LinkedHashMap<>();
+		for (Entry candidate : bySize.getOrDefault(searchedEntry.size,Collections.emptySet())) {
+			if (candidate.location != null || candidate.directory.equals(relativeDirectory)) {
+				continue;
+			}
+			statistics.candidates.increment();
+			candidates.put(root.resolve(candidate.directory).resolve(candidate.name),candidate);
+		}
+		return find(candidates,searched,searchedEntry);
+	}
+
+	/**
+	 * Reconciles directory used by other worker than the caller, so that it is reconciled only once even when looked up concurrently.
+	 * Entries of directory which no longer exists are removed.
+	 */
+	private synchronized void reconcileElsewhere(String relativeDirectory) {
+		if (reconciledDirectories.contains(relativeDirectory)) {
+			return;
+		}
+		Path dir = root.resolve(relativeDirectory);
+		metrics.stats.increment();
+		if (Files.isDirectory(dir)) {
+			reconcile(dir);
+		} else {
+			Map<String,Entry> entries = directories.remove(relativeDirectory);
+			if (entries != null) {
+				entries.values().forEach(this::removed);
+				dirty = true;
+			}
+			reconciledDirectories.add(relativeDirectory);
+		}
+	}
+
+	/**
+	 * Path of file relative to the root of library, with {@code /} as separator.
+	 */
+	String relativize(Path file) {
+		String result = root.toAbsolutePath().relativize(file.toAbsolutePath()).toString();
+		return result.replace(root.getFileSystem().getSeparator(),"/");
+	}
+
+	private boolean hasEqualHash(Path file, Entry candidate, Path searched, Entry searchedEntry) throws IOException {
+		HashCode candidateSample = sampleOfTarget(file,candidate);
+		if (candidateSample == null || !candidateSample.equals(sample(searched,searchedEntry))) {
+			statistics.eliminatedBySample.increment();
+			return false;
+		}
+		HashCode candidateHash = hashOfTarget(file,candidate);
+		if (candidateHash == null || !candidateHash.equals(hash(searched,searchedEntry))) {
+			statistics.eliminatedByHash.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reconciles all directories under the root in single walk, attributes of files are taken from the walk.
+	 */
+	private void reconcileRecursively() {
+		Deque<List<ListedFile>> children = new ArrayDeque<>();
+		try {
+			Files.walkFileTree(root,new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+					if (!children.isEmpty()) {
+						children.peek().add(new ListedFile(dir,attributes));
+					}
+					metrics.listings.increment();
+					children.push(new ArrayList<>());
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					metrics.stats.increment();
+					children.peek().add(new ListedFile(file,attributes));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					if (e != null) {
+						throw e;
+					}
+					List<ListedFile> listed = children.pop();
+					if (!dir.equals(root)) { // files in the root are not media
+						reconcile(dir,listed);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Registers file which is going to be moved into target, reusing fingerprint computed during preceding {@link #find(Path, Path)}.
+	 * Until the move is performed, content of the file is read from the source.
+	 * When the move fails, the entry is removed by reconciliation in the next run.
+	 */
+	public void plannedMove(Path source, Path target) {
+		Entry sourceEntry = sourceEntries.remove(source);
+		String relativeDirectory = relativize(target.getParent());
+		if (sourceEntry == null || !reconciledDirectories.contains(relativeDirectory)) {
+			return; // directory will be reconciled when needed
+		}
+		Entry entry = new Entry(sourceEntry.size,sourceEntry.lastModified);
+		entry.sample = sourceEntry.sample;
+		entry.hash = sourceEntry.hash;
+		entry.location = source;
+		put(relativeDirectory,target.getFileName().toString(),entry);
+		dirty = true;
+	}
+
+	public DedupStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void save() {
+		if (dirty) {
+			saveIndex();
+		}
+		ContentFilter contentFilter = filter;
+		if (contentFilter != null && (filterDirty || dirty) && indexLength != 0) {
+			contentFilter.write(root,indexLength,indexLastModified);
+			filterDirty = false;
+		}
+		dirty = false;
+	}
+
+	private void saveIndex() {
+		List<String> lines = new ArrayList<>();
+		if (libraryIndexed) {
+			lines.add(LIBRARY_INDEXED);
+		}
+		directories.forEach((directory,entries) -> entries.forEach((name,entry) -> lines.add(TAB_JOINER.join(
+				formatHash(entry.hash),formatHash(entry.sample),entry.size,entry.lastModified,directory.isEmpty() ? name : directory + "/" + name))));
+		Path indexFile = root.resolve(FILE_NAME);
+		Path temporaryFile = root.resolve(FILE_NAME + ".tmp");
+		try {
+			Files.write(temporaryFile,lines,Charsets.UTF_8);
+			Files.move(temporaryFile,indexFile,StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+			BasicFileAttributes attributes = Files.readAttributes(indexFile,BasicFileAttributes.class);
+			indexLength = attributes.size();
+			indexLastModified = attributes.lastModifiedTime().toMillis();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Map<String,Entry> reconcile(Path dir) {
+		String relativeDirectory = relativize(dir);
+		if (!reconciledDirectories.contains(relativeDirectory)) {
+			reconcile(dir,ListedFile.list(dir,metrics));
+		}
+		return directory(relativeDirectory);
+	}
+
+	/**
+	 * Updates entries of directory according to given listing of its children, unless the directory has already been reconciled.
+	 * The directory is marked as reconciled only when its entries are updated, so that {@link #findElsewhere(Path, Path)}
+	 * of other worker never uses stale entries.
+	 */
+	synchronized void reconcile(Path dir, List<ListedFile> children) {
+		String relativeDirectory = relativize(dir);
+		Map<String,Entry> entries = directory(relativeDirectory);
+		if (!reconciledDirectories.contains(relativeDirectory)) {
+			Set<String> names = new HashSet<>();
+			for (ListedFile file : children) {
+				if (!file.isFile()) {
+					continue;
+				}
+				String name = file.getName();
+				names.add(name);
+				long size = file.size();
+				long lastModified = file.lastModified();
+				Entry entry = entries.get(name);
+				if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+					put(relativeDirectory,name,new Entry(size,lastModified));
+					dirty = true;
+				}
+			}
+			for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+				Entry entry = i.next();
+				if (!names.contains(entry.name)) {
+					i.remove();
+					removed(entry);
+					dirty = true;
+				}
+			}
+			reconciledDirectories.add(relativeDirectory);
+		}
+	}
+
+	/**
+	 * Registers attributes of source file known from listing, so that they are not read again.
+	 */
+	void listedSource(ListedFile source) {
+		sourceEntries.computeIfAbsent(source.path,s -> new Entry(source.size(),source.lastModified()));
+	}
+
+	private Entry sourceEntry(Path source) throws IOException {
+		Entry result = sourceEntries.get(source);
+		if (result == null) {
+			metrics.stats.increment();
+			BasicFileAttributes attributes = Files.readAttributes(source,BasicFileAttributes.class);
+			result = new Entry(attributes.size(),attributes.lastModifiedTime().toMillis());
+			Entry previous = sourceEntries.putIfAbsent(source,result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hash of first and last {@link #SAMPLE_SIZE} bytes.
+	 * For files not larger than two samples the sample covers whole content and is also the full hash.
+	 */
+	private HashCode sample(Path file, Entry entry) throws IOException {
+		if (entry.sample == null) {
+			Hasher hasher = HASH_FUNCTION.newHasher();
+			try (FileChannel channel = FileChannel.open(file)) {
+				byte[] head = new byte[(int)Math.min(entry.size,SAMPLE_SIZE)];
+				readFully(channel,head,0);
+				hasher.putBytes(head);
+				if (entry.size > SAMPLE_SIZE) {
+					byte[] tail = new byte[(int)Math.min(entry.size - SAMPLE_SIZE,SAMPLE_SIZE)];
+					readFully(channel,tail,entry.size - tail.length);
+					hasher.putBytes(tail);
+					metrics.bytesRead.add(tail.length);
+				}
+				metrics.bytesRead.add(head.length);
+			}
+			entry.sample = hasher.hash();
+			if (entry.size <= 2 * SAMPLE_SIZE) {
+				entry.hash = entry.sample;
+			}
+		}
+		return entry.sample;
+	}
+
+	private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer,position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	/**
+	 * Unreadable target file cannot be considered equal, {@code null} is returned for it.
+	 */
+	private HashCode sampleOfTarget(Path file, Entry entry) {
+		try {
+			if (entry.sample != null) {
+				return entry.sample;
+			}
+			dirty = true;
+			HashCode result = sample(entry.location == null ? file : entry.location,entry);
+			ContentFilter contentFilter = filter;
+			if (contentFilter != null) {
+				contentFilter.put(entry.size,result);
+				contentFilter.removeUnsampled(entry.size);
+			}
+			return result;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private HashCode hashOfTarget(Path file, Entry entry) {
+		try {
+			if (entry.hash == null) {
+				dirty = true;
+			}
+			return hash(entry.location == null ? file : entry.location,entry);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private HashCode hash(Path file, Entry entry) throws IOException {
+		if (entry.hash == null) {
+			statistics.fullyRead.increment();
+			metrics.bytesRead.add(entry.size);
+			Hasher hasher = HASH_FUNCTION.newHasher();
+			try (InputStream in = Files.newInputStream(file)) {
+				ByteStreams.copy(in,Funnels.asOutputStream(hasher));
+			}
+			entry.hash = hasher.hash();
+		}
+		return entry.hash;
+	}
+
+	private Map<String,Entry> directory(String relativeDirectory) {
+		return directories.computeIfAbsent(relativeDirectory,d -> new ConcurrentSkipListMap<>());
+	}
+
+	private void put(String relativeDirectory, String name, Entry entry) {
+		entry.directory = relativeDirectory;
+		entry.name = name;
+		Entry previous = directory(relativeDirectory).put(name,entry);
+		if (previous != null) {
+			removed(previous);
+		}
+		Map<Long,Set<Entry>> index = bySize;
+		if (index != null) {
+			addBySize(index,entry);
+		}
+		ContentFilter contentFilter = filter;
+		if (contentFilter != null) {
+			if (entry.sample == null) {
+				contentFilter.addUnsampled(entry.size);
+			} else {
+				contentFilter.put(entry.size,entry.sample);
+			}
+		}
+	}
+
+	private static void addBySize(Map<Long,Set<Entry>> index, Entry entry) {
+		index.computeIfAbsent(entry.size,size -> ConcurrentHashMap.newKeySet()).add(entry);
+	}
+
+	/**
+	 * Unregisters entry removed from its directory.
+	 */
+	private void removed(Entry entry) {
+		ContentFilter contentFilter = filter;
+		if (contentFilter != null && entry.sample == null) {
+			contentFilter.removeUnsampled(entry.size);
+		}
+		Map<Long,Set<Entry>> index = bySize;
+		if (index != null) {
+			Set<Entry> entries = index.get(entry.size);
+			if (entries != null) {
+				entries.remove(entry);
+			}
+		}
+	}
+
+	private static HashCode parseHash(String s) {
+		return NOT_COMPUTED.equals(s) ? null : HashCode.fromString(s);
+	}
+
+	private static String formatHash(HashCode hash) {
+		return hash == null ? NOT_COMPUTED : hash.toString();
+	}
+
+	private static class Entry {
+
+		final long size;
+
+		final long lastModified;
+
+		/**
+		 * Computed lazily by any worker which looks the entry up, published to others by volatile write.
+		 */
+		volatile HashCode sample;
+
+		volatile HashCode hash;
+
+		/**
+		 * Source of file planned to be moved into target, not persisted.
+		 */
+		Path location;
+
+		String directory;
+
+		String name;
+
+		Entry(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+	}
+
+}
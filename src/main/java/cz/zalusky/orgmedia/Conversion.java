@@ -1,19 +1,870 @@
 package cz.zalusky.orgmedia;
 
-import java.io.File;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import cz.zalusky.orgmedia.Report.Type;
+import cz.zalusky.orgmedia.RunMetrics.Phase;
+import cz.zalusky.orgmedia.TargetState.DirectoryStatus;
 
 /**
+ * Conversion is performed in two phases. In planning phase the source is scanned into list of {@link Task}s in deterministic order
+ * and target is inspected, which results in {@link Plan} of operations without changing anything.
+ * In execution phase operations of the plan are performed.
+ * Both phases are performed either sequentially, or by several workers partitioned by target directory,
+ * or each task on its own thread chained after previous task of the same target directory.
+ * <p>
+ * Directories are listed by {@link ListedFile} together with attributes of children, so that each file is queried at most once.
+ * Files are moved atomically by rename when source and target are on the same {@link FileStores file store},
+ * otherwise they are copied, forced to the device and deleted. Tasks copying large files run on separate bounded lane,
+ * so that they do not hold workers renaming small files.
  * @author Tomas Zalusky
  */
-public abstract class Conversion {
+public abstract class Conversion implements Cloneable {
+
+	static final long DEFAULT_COPY_LANE_MIN_SIZE = 16 << 20;
+
+	static final String COPIED = " (copied to other file store)";
+
+	/**
+	 * Consecutive transfers between channels without progress after which the rest of file is copied through buffer,
+	 * since some network and FUSE file systems keep transferring nothing.
+	 */
+	private static final int MAX_STALLED_TRANSFERS = 16;
+
+	private static final int COPY_BUFFER_SIZE = 64 << 10;
+
+	private boolean verifyContent = true;
+
+	private int workers = 1;
+
+	private int threadPerTask;
+
+	private boolean keepReportContent = true;
+
+	private boolean globalDedup;
+
+	private double filterFalsePositiveRate;
+
+	private long filterMaxBytes;
+
+	private int copyLanes = 1;
+
+	private long copyLaneMinSize = DEFAULT_COPY_LANE_MIN_SIZE;
+
+	private final FileStores fileStores = new FileStores();
+
+	private Predicate<Path> sourceFilter;
+
+	private boolean deleteEmptySource = true;
+
+	private IndexCache indexCache;
+
+	private boolean journal = true;
+
+	private int journalSyncTasks = Journal.DEFAULT_SYNC_TASKS;
+
+	private long journalSyncMillis = Journal.DEFAULT_SYNC_MILLIS;
+
+	/**
+	 * Converts source into target. When previous run into the target has been interrupted, it is resumed instead,
+	 * the source must be the same then.
+	 */
+	public Report execute(Path source, Path target) {
+		return execute(Collections.singletonMap(source, this), target);
+	}
+
+	/**
+	 * Converts several sources, each by its own conversion, into the same target in single run (e.g. camera card and phone of the same trip).
+	 * Sources are scanned in order of the map against single listing of target and single {@link ContentIndex},
+	 * so that file present in several sources is moved once and deleted as duplicate from the others, and tasks of all sources
+	 * are performed by workers of this conversion. Content index is configured by this conversion, conversions of sources should therefore
+	 * share its dedup settings; source filter and content verification are taken from conversion of each source.
+	 * When previous run into the target has been interrupted, it is resumed instead, the sources must be the same then.
+	 */
+	public Report execute(Map<Path,Conversion> sources, Path target) {
+		Plan interrupted = Journal.interruptedPlan(target);
+		if (interrupted != null) {
+			Preconditions.checkState(absolute(interrupted.getSources()).equals(absolute(sources.keySet())),
+					"Target %s contains journal of interrupted conversion from %s, which has to be completed first", target, interrupted.getSources());
+			return execute(interrupted, null, true);
+		}
+		RunMetrics metrics = new RunMetrics();
+		ContentIndex index = indexCache != null ? indexCache.load(target, metrics) : ContentIndex.load(target, metrics);
+		Plan plan = plan(sources, target, index, metrics);
+		return execute(plan, index, false);
+	}
+
+	private static List<Path> absolute(Collection<Path> paths) {
+		return paths.stream().map(Path::toAbsolutePath).collect(toList());
+	}
+
+	/**
+	 * Plans conversion without changing anything in source nor target.
+	 */
+	public Plan plan(Path source, Path target) {
+		RunMetrics metrics = new RunMetrics();
+		Plan result = plan(Collections.singletonMap(source, this), target, ContentIndex.load(target, metrics), metrics);
+		result.progress.start(Progress.Phase.DONE, 0);
+		result.progress.unregister();
+		return result;
+	}
+
+	/**
+	 * Executes plan made earlier, possibly read from file.
+	 */
+	public Report execute(Plan plan) {
+		Preconditions.checkState(Journal.interruptedPlan(plan.getTarget()) == null,
+				"Target %s contains journal of interrupted conversion, which has to be completed first", plan.getTarget());
+		return execute(plan, null, false);
+	}
+
+	/**
+	 * @return plan whose progress remains registered
+	 */
+	private Plan plan(Map<Path,Conversion> sources, Path target, ContentIndex index, RunMetrics metrics) {
+		List<Path> sourceList = new ArrayList<>(sources.keySet());
+		Progress progress = new Progress(getClass().getSimpleName(), sourceList.get(0), target, metrics);
+		progress.register();
+		try {
+			TargetState state = new TargetState(index, metrics);
+			List<Task> tasks = new ArrayList<>();
+			long start = RunMetrics.start();
+			if (filterMaxBytes > 0) {
+				index.enableContentFilter(filterFalsePositiveRate, filterMaxBytes);
+			}
+			if (globalDedup) {
+				index.enableGlobalLookup();
+			}
+			sources.forEach((source, conversion) -> conversion.scan(source, target, state, tasks));
+			metrics.stop(Phase.SCAN, start);
+			progress.start(Progress.Phase.PLAN, tasks.size());
+			perform(tasks, task -> {
+				progress.started(task);
+				task.plan();
+				progress.completed();
+			});
+			Task cleanUp = new Task();
+			if (deleteEmptySource) {
+				sources.forEach((source, conversion) -> conversion.cleanUp(source, cleanUp));
+			}
+			return new Plan(sourceList, target, tasks, cleanUp, metrics, progress);
+		} catch (RuntimeException | Error e) {
+			progress.unregister();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param index index updated during planning, saved after execution, {@code null} when plan has been read from file
+	 * @param resume whether the plan is read from journal of interrupted run, which is continued
+	 */
+	private Report execute(Plan plan, ContentIndex index, boolean resume) {
+		RunMetrics metrics = plan.metrics;
+		Progress progress = plan.progress != null ? plan.progress : new Progress(getClass().getSimpleName(), plan.getSource(), plan.getTarget(), metrics);
+		progress.register();
+		progress.start(Progress.Phase.EXECUTE, plan.tasks.size());
+		Report report = new Report(keepReportContent);
+		report.setMetrics(metrics);
+		Path logFile = report.openLogFile(getLogFile(plan.getTarget()),plan.getSources(),plan.getTarget());
+		Journal journal = resume ? Journal.resume(plan, journalSyncTasks, journalSyncMillis)
+				: this.journal ? Journal.start(plan, journalSyncTasks, journalSyncMillis) : Journal.disabled(plan);
+		boolean completed = false;
+		try {
+			if (resume) {
+				report.ok("resuming interrupted conversion, %d operations already performed", journal.getCompletedCount());
+			}
+			ReportMerger merger = new ReportMerger(plan.tasks, report);
+			perform(plan.tasks, copyLane(plan.tasks, metrics, journal), task -> {
+				progress.started(task);
+				perform(task, metrics, journal);
+				merger.completed();
+				report.flushLogFile();
+				progress.completed();
+			});
+			perform(plan.cleanUp, metrics, journal);
+			report.append(plan.cleanUp.report);
+			completed = true;
+			if (index != null) {
+				index.save();
+				report.setDedupStatistics(index.getStatistics());
+			}
+			metrics.finish();
+		} finally {
+			journal.close(completed);
+			report.closeLogFile();
+			progress.start(Progress.Phase.DONE, 0);
+			progress.unregister();
+		}
+		System.out.println("Converted " + Joiner.on(", ").join(plan.getSources()) + " to " + plan.getTarget() + " and logged into " + logFile.toAbsolutePath() + ".");
+		System.out.println(report.getSummary());
+		System.out.println(metrics);
+		return report;
+	}
+
+	/**
+	 * Scans source and creates tasks in order in which they should be reported.
+	 */
+	abstract void scan(Path source, Path target, TargetState state, List<Task> tasks);
+
+	/**
+	 * Plans operations performed after all tasks have been performed.
+	 */
+	void cleanUp(Path source, Task task) {
+	}
+
+	/**
+	 * Whether files found in {@link ContentIndex} by equal hash are finally compared byte by byte.
+	 */
+	public void setVerifyContent(boolean verifyContent) {
+		this.verifyContent = verifyContent;
+	}
+
+	/**
+	 * Whether duplicates are searched also in other directories of the whole library, when not found in target day directory.
+	 * All directories of the target are reconciled with {@link ContentIndex} when planning starts,
+	 * only files present in the library before the run are considered in other directories.
+	 */
+	public void setGlobalDedup(boolean globalDedup) {
+		this.globalDedup = globalDedup;
+	}
+
+	/**
+	 * Enables Bloom filter in front of {@link ContentIndex}, so that files whose content is new to the library are moved without reading target files.
+	 * The filter is persisted beside the index.
+	 * @param falsePositiveRate rate of new files which are still compared with target files, e.g. {@code 0.01}
+	 * @param maxBytes memory budget of the filter, the false positive rate rises when the library does not fit into it
+	 */
+	public void setContentFilter(double falsePositiveRate, long maxBytes) {
+		ContentFilter.expectedFiles(0,falsePositiveRate,maxBytes); // validates arguments
+		this.filterFalsePositiveRate = falsePositiveRate;
+		this.filterMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Whether lines of report are kept in memory in addition to be written into log file.
+	 * Switching it off makes memory consumption of report independent of number of processed files.
+	 */
+	public void setKeepReportContent(boolean keepReportContent) {
+		this.keepReportContent = keepReportContent;
+	}
+
+	/**
+	 * Number of threads performing tasks, tasks of the same target directory are never performed concurrently.
+	 */
+	public void setWorkers(int workers) {
+		Preconditions.checkArgument(workers >= 1,"Invalid number of workers %s",workers);
+		this.workers = workers;
+	}
+
+	/**
+	 * Maximum number of tasks performed concurrently, each on its own thread, {@code 0} to switch the mode off.
+	 * Virtual threads are used when running on Java 21 or later.
+	 * Tasks of the same target directory are still performed one after another in order of creation.
+	 */
+	public void setThreadPerTask(int concurrency) {
+		Preconditions.checkArgument(concurrency >= 0,"Invalid concurrency %s",concurrency);
+		this.threadPerTask = concurrency;
+	}
+
+	/**
+	 * Number of threads performing tasks which copy files of given minimal size to other file store.
+	 * Tasks of the same target directory are still performed one after another in order of creation.
+	 */
+	public void setCopyLanes(int copyLanes, long minSize) {
+		Preconditions.checkArgument(copyLanes >= 1,"Invalid number of copy lanes %s",copyLanes);
+		Preconditions.checkArgument(minSize >= 0,"Invalid minimal size %s",minSize);
+		this.copyLanes = copyLanes;
+		this.copyLaneMinSize = minSize;
+	}
+
+	/**
+	 * Restricts conversion to source files accepted by given filter, other source files are left untouched as if they were not present.
+	 * Directories are always scanned. {@code null} accepts all files.
+	 */
+	void setSourceFilter(Predicate<Path> sourceFilter) {
+		this.sourceFilter = sourceFilter;
+	}
+
+	/**
+	 * Whether source directory is deleted when no file remains in it. Nested directories of source are deleted when empty regardless.
+	 */
+	public void setDeleteEmptySource(boolean deleteEmptySource) {
+		this.deleteEmptySource = deleteEmptySource;
+	}
+
+	/**
+	 * Whether execution is journaled, so that interrupted run can be resumed. Without journal, interrupted run has to be repeated
+	 * by new conversion, which plans again from the files remaining in the source.
+	 */
+	public void setJournal(boolean journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Journal is synced to the device after given number of completed tasks or given time, whichever comes first.
+	 * Operations not synced before interruption are recognized by their effect when the run is resumed.
+	 */
+	public void setJournalSync(int tasks, long millis) {
+		Preconditions.checkArgument(tasks > 0 && millis >= 0, "Invalid journal sync interval %s tasks, %s ms", tasks, millis);
+		this.journalSyncTasks = tasks;
+		this.journalSyncMillis = millis;
+	}
+
+	/**
+	 * Keeps content indexes in memory between runs, {@code null} to load index from file in each run.
+	 */
+	void setIndexCache(IndexCache indexCache) {
+		this.indexCache = indexCache;
+	}
+
+	IndexCache getIndexCache() {
+		return indexCache;
+	}
+
+	/**
+	 * @return conversion of the same kind with the same settings, which can be configured without affecting this conversion
+	 */
+	Conversion copy() {
+		try {
+			return (Conversion)clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param runner performs task, is called from any thread
+	 */
+	void perform(List<Task> tasks, Consumer<Task> runner) {
+		perform(tasks,Collections.emptySet(),runner);
+	}
+
+	/**
+	 * @param copyLane tasks performed on separate lane of {@link #setCopyLanes(int, long)} threads
+	 */
+	void perform(List<Task> tasks, Set<Task> copyLane, Consumer<Task> runner) {
+		if (threadPerTask > 0) {
+			performThreadPerTask(tasks,copyLane,runner);
+			return;
+		}
+		if (!copyLane.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(workers);
+			try {
+				performChained(tasks,copyLane,runner,executor);
+			} finally {
+				executor.shutdownNow();
+			}
+			return;
+		}
+		if (workers == 1) {
+			tasks.forEach(runner);
+			return;
+		}
+		Map<Path,List<Task>> partitions = new LinkedHashMap<>();
+		for (Task task : tasks) {
+			if (task.getTargetDirectory() != null) {
+				partitions.computeIfAbsent(task.getTargetDirectory(),d -> new ArrayList<>()).add(task);
+			} else {
+				runner.accept(task); // nothing to perform, only completes the task
+			}
+		}
+		if (partitions.isEmpty()) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers,partitions.size()));
+		try {
+			List<Future<?>> futures = partitions.values().stream()
+					.map(partition -> executor.submit(() -> partition.forEach(runner)))
+					.collect(toList());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void performThreadPerTask(List<Task> tasks, Set<Task> copyLane, Consumer<Task> runner) {
+		ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+		ExecutorService executor = virtualExecutor != null ? virtualExecutor : Executors.newFixedThreadPool(threadPerTask);
+		Semaphore permits = new Semaphore(threadPerTask);
+		try {
+			performChained(tasks,copyLane,virtualExecutor == null ? runner : task -> {
+				permits.acquireUninterruptibly();
+				try {
+					runner.accept(task);
+				} finally {
+					permits.release();
+				}
+			},executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Performs each task after previous task of the same target directory, on given executor or on copy lane.
+	 */
+	private void performChained(List<Task> tasks, Set<Task> copyLane, Consumer<Task> runner, ExecutorService executor) {
+		ExecutorService copyExecutor = copyLane.isEmpty() ? null : Executors.newFixedThreadPool(copyLanes);
+		Map<Path,CompletableFuture<Void>> lastTasks = new HashMap<>();
+		try {
+			for (Task task : tasks) {
+				if (task.getTargetDirectory() == null) {
+					runner.accept(task); // nothing to perform, only completes the task
+				} else {
+					Runnable runnable = () -> runner.accept(task);
+					ExecutorService lane = copyLane.contains(task) ? copyExecutor : executor;
+					CompletableFuture<Void> previous = lastTasks.get(task.getTargetDirectory());
+					lastTasks.put(task.getTargetDirectory(),previous == null
+							? CompletableFuture.runAsync(runnable,lane)
+							: previous.thenRunAsync(runnable,lane));
+				}
+			}
+			CompletableFuture.allOf(lastTasks.values().toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			if (copyExecutor != null) {
+				copyExecutor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Tasks which move file of at least {@link #setCopyLanes(int, long) minimal size} to other file store, grouping files by store of source and target.
+	 */
+	private Set<Task> copyLane(List<Task> tasks, RunMetrics metrics, Journal journal) {
+		Set<Task> result = new HashSet<>();
+		for (Task task : tasks) {
+			List<Operation> operations = task.getOperations();
+			for (int i = 0; i < operations.size(); i++) {
+				Operation operation = operations.get(i);
+				if (operation.kind == Operation.Kind.MOVE && !journal.isCompleted(task, i)
+						&& !fileStores.sameStore(operation.file.getParent(), operation.target.getParent())) {
+					metrics.stats.increment();
+					try {
+						if (Files.size(operation.file) >= copyLaneMinSize) {
+							result.add(task);
+							break;
+						}
+					} catch (IOException e) {
+						// reported when performed
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return executor starting new virtual thread for each task or {@code null} when virtual threads are not supported
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
 
-	public abstract Report execute(File source, File target);
-	
 	String getLogFileName() {
 		String logFileName = String.format("%s-%s.log",this.getClass().getSimpleName(),LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
 		return logFileName;
 	}
-	
+
+	Path getLogFile(Path target) {
+		String logFileName = getLogFileName();
+		Path logFile = target.resolve(logFileName);
+		return logFile;
+	}
+
+	/**
+	 * Children of given directory with their attributes sorted by name, so that conversion does not depend on order given by file system.
+	 */
+	List<ListedFile> listFiles(Path dir, TargetState state) {
+		List<ListedFile> result = ListedFile.listSorted(dir, state.getMetrics());
+		if (sourceFilter != null) {
+			result.removeIf(f -> !f.isDirectory() && !sourceFilter.test(f.path));
+		}
+		return result;
+	}
+
+	/**
+	 * @return matcher which matched name of given file or {@code null} when name does not match
+	 */
+	Matcher classify(Pattern pattern, ListedFile file, TargetState state) {
+		long start = RunMetrics.start();
+		Matcher result = pattern.matcher(file.getName());
+		boolean matches = result.matches();
+		state.getMetrics().stop(Phase.CLASSIFY, start);
+		return matches ? result : null;
+	}
+
+	/**
+	 * Finds or creates target day directory {@code YYYYMM/YYYYMMDD}.
+	 * @return target day directory or {@code null} when it cannot be used, in which case the error is reported
+	 */
+	Path targetDayDirectory(Path target, String year, String month, String day, Path sourceFile, TargetState state, Task task) {
+		String targetMonth = year + month;
+		Path targetMonthDirectory = target.resolve(targetMonth);
+		if (!checkDirectory(targetMonthDirectory, sourceFile, state, task)) {
+			return null;
+		}
+		String targetDay = year + month + day;
+		Path targetDayDirectory = targetMonthDirectory.resolve(targetDay);
+		if (!checkDirectory(targetDayDirectory, sourceFile, state, task)) {
+			return null;
+		}
+		if (state.planMkdir(targetDayDirectory)) {
+			task.mkdir(targetDayDirectory, "target %s for file %s could not be created, skipped", targetDayDirectory, sourceFile);
+		}
+		return targetDayDirectory;
+	}
+
+	private boolean checkDirectory(Path dir, Path sourceFile, TargetState state, Task task) {
+		if (state.directory(dir) == DirectoryStatus.NOT_DIRECTORY) {
+			task.report.skipped("target %s for file %s exists but is not a directory, skipped",dir,sourceFile);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Plans move of media file into target day directory unless it already exists there, rename in case of name conflict.
+	 */
+	void place(ListedFile listedSourceFile, Path targetDayDirectory, TargetState state, Task task) {
+		Path sourceFile = listedSourceFile.path;
+		String name = listedSourceFile.getName();
+		state.getIndex().listedSource(listedSourceFile);
+		DirectoryNames targetNames = state.names(targetDayDirectory);
+		Set<Path> filesWithEqualContent = findByEqualContent(state,targetDayDirectory,sourceFile);
+		Set<Path> filesElsewhereWithEqualContent;
+		if (filesWithEqualContent.stream().anyMatch(f -> f.getFileName().toString().equals(name))) { // same content and name
+			task.delete(Type.DUPLICATE_DELETED, sourceFile, targetDayDirectory.resolve(name), "file %s deleted because target exists with same content and name", sourceFile);
+		} else if (!filesWithEqualContent.isEmpty()) { // same content, different name
+			task.delete(Type.DUPLICATE_DELETED, sourceFile, Collections.min(filesWithEqualContent), "file %s deleted because target exists with same content and different name %s", sourceFile,
+					filesWithEqualContent.stream().map(f -> f.getFileName().toString()).collect(toSet()));
+		} else if (globalDedup && !(filesElsewhereWithEqualContent = findElsewhereByEqualContent(state,targetDayDirectory,sourceFile)).isEmpty()) { // same content in other day
+			task.delete(Type.DUPLICATE_DELETED, sourceFile, Collections.min(filesElsewhereWithEqualContent), "file %s deleted because target exists with same content in other directory %s", sourceFile,
+					filesElsewhereWithEqualContent.stream().map(state.getIndex()::relativize).collect(toCollection(TreeSet::new)));
+		} else { // content does not exist in target
+			if (targetNames.contains(name)) { // name is already in use -> rename
+				Path targetFile = targetDayDirectory.resolve(targetNames.allocate(name));
+				task.move(Type.RENAMED, sourceFile, targetFile, "file %s moved into %s because source name was in use in target with different content", sourceFile, targetFile);
+				state.plannedMove(sourceFile, targetFile);
+			} else { // name not used -> just move
+				Path targetFile = targetDayDirectory.resolve(name);
+				task.move(Type.MOVED, sourceFile, targetFile, "file %s moved into %s", sourceFile, targetFile);
+				state.plannedMove(sourceFile, targetFile);
+			}
+		}
+	}
+
+	Set<Path> findByEqualContent(TargetState state, Path dir, Path searched) {
+		return findByEqualContent(state, dir, searched, false);
+	}
+
+	/**
+	 * Finds files with equal content in the whole library except given directory, requires global dedup.
+	 */
+	Set<Path> findElsewhereByEqualContent(TargetState state, Path dir, Path searched) {
+		return findByEqualContent(state, dir, searched, true);
+	}
+
+	private Set<Path> findByEqualContent(TargetState state, Path dir, Path searched, boolean elsewhere) {
+		long start = RunMetrics.start();
+		try {
+			return findByEqualContent(state.getIndex(), state, dir, searched, elsewhere);
+		} finally {
+			state.getMetrics().stop(Phase.DEDUP, start);
+		}
+	}
+
+	private Set<Path> findByEqualContent(ContentIndex index, TargetState state, Path dir, Path searched, boolean elsewhere) {
+		Set<Path> candidates;
+		try {
+			candidates = elsewhere ? index.findElsewhere(dir,searched) : index.find(dir,searched);
+		} catch (IOException e) {
+			return Collections.emptySet();
+		}
+		if (!verifyContent || candidates.isEmpty()) {
+			return candidates;
+		}
+		Set<Path> result = candidates.stream()
+				.filter(f -> {try {return ContentComparison.equal(state.contentOf(f),searched,state.getMetrics().bytesRead);} catch (IOException e) {return false;}})
+				.collect(toSet());
+		index.getStatistics().eliminatedByComparison.add(candidates.size() - result.size());
+		return result;
+	}
+
+	/**
+	 * Performs planned operations of task not performed yet according to journal and completes it.
+	 */
+	void perform(Task task, RunMetrics metrics, Journal journal) {
+		List<Operation> operations = task.getOperations();
+		for (int i = 0; i < operations.size(); i++) {
+			if (journal.isCompleted(task, i)) {
+				continue;
+			}
+			Operation operation = operations.get(i);
+			if (!journal.isResumed() || !repair(operation, metrics, task.report)) {
+				perform(operation, metrics, task.report);
+			}
+			journal.completed(task, i);
+		}
+		journal.checkpoint();
+		task.done();
+	}
+
+	/**
+	 * Completes operation which may have been performed only partially or without being journaled by interrupted run.
+	 * Move interrupted while copying across file systems leaves both files, the target possibly incomplete.
+	 * @return {@code true} when the operation has been completed, {@code false} when it still has to be performed
+	 */
+	boolean repair(Operation operation, RunMetrics metrics, Report report) {
+		switch (operation.kind) {
+			case MOVE:
+				metrics.stats.add(2);
+				if (!Files.exists(operation.target)) {
+					return false;
+				}
+				if (!Files.exists(operation.file)) { // moved, not journaled
+					metrics.filesProcessed.increment();
+					report.add(operation.type, operation.format, operation.args);
+					return true;
+				}
+				metrics.stats.add(2);
+				try {
+					if (Files.size(operation.target) < Files.size(operation.file)) { // incomplete copy
+						Files.delete(operation.target);
+						return false;
+					} else if (ContentComparison.equal(operation.file, operation.target, metrics.bytesRead)) { // copied, source not deleted
+						delete(operation.type, operation.file, metrics, report, operation.format, operation.args);
+						return true;
+					}
+				} catch (IOException e) {
+					// reported as failed move
+				}
+				report.add(Type.FAILED, unsuccessfulAttempt("move") + operation.format, operation.args);
+				return true;
+			case DELETE:
+				metrics.stats.increment();
+				if (!Files.exists(operation.file)) { // deleted, not journaled
+					metrics.filesProcessed.increment();
+					report.add(operation.type, operation.format, operation.args);
+					return true;
+				}
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	private void perform(Operation operation, RunMetrics metrics, Report report) {
+		switch (operation.kind) {
+			case MKDIR:
+				long start = RunMetrics.start();
+				try {
+					Files.createDirectories(operation.file);
+				} catch (IOException e) {
+					report.add(operation.type, operation.format, operation.args);
+				}
+				metrics.stop(Phase.MOVE, start);
+				break;
+			case MOVE:
+				move(operation.type, operation.file, operation.target, metrics, report, operation.format, operation.args);
+				break;
+			case DELETE:
+				if (operation.target != null && !Files.exists(operation.target)) { // file with equal content has not been moved
+					report.add(Type.FAILED, unsuccessfulAttempt("delete") + operation.format, operation.args);
+				} else {
+					delete(operation.type, operation.file, metrics, report, operation.format, operation.args);
+				}
+				break;
+			case DELETE_IF_EMPTY:
+				deleteIfEmpty(operation.file, metrics, report);
+				break;
+		}
+	}
+
+	void deleteIfEmpty(Path dir, RunMetrics metrics, Report report) {
+		metrics.listings.increment();
+		List<String> remaining = new ArrayList<>();
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			children.forEach(child -> remaining.add(child.getFileName().toString()));
+		} catch (IOException e) {
+			report.add(Type.FAILED, unsuccessfulAttempt("delete") + "there was no file remaining in directory %s", dir);
+			return;
+		}
+		if (remaining.isEmpty()) {
+			delete(Type.DELETED, dir, metrics, report, "there was no file remaining in directory %s", dir);
+		} else {
+			remaining.sort(String.CASE_INSENSITIVE_ORDER);
+			report.error("preserving directory %s, there are remaining files %s", dir, remaining);
+		}
+	}
+
+	void delete(Type type, Path file, RunMetrics metrics, Report report, String format, Object... args) {
+		long start = RunMetrics.start();
+		boolean deleted;
+		try {
+			Files.delete(file);
+			deleted = true;
+		} catch (IOException e) {
+			deleted = false;
+		}
+		metrics.stop(Phase.DELETE, start);
+		if (deleted) {
+			metrics.filesProcessed.increment();
+			report.add(type, format, args);
+		} else {
+			report.add(Type.FAILED, unsuccessfulAttempt("delete") + format, args);
+		}
+	}
+
+	void move(Type type, Path source, Path target, RunMetrics metrics, Report report, String format, Object... args) {
+		long start = RunMetrics.start();
+		try {
+			metrics.stats.increment();
+			long size = Files.size(source);
+			boolean copied = move(source, target);
+			metrics.stop(Phase.MOVE, start);
+			metrics.filesProcessed.increment();
+			metrics.bytesMoved.add(size);
+			if (copied) {
+				metrics.bytesCopied.add(size);
+			}
+			report.add(type, copied ? format + COPIED : format, args);
+			report.addBytesMoved(size);
+		} catch (IOException e) {
+			metrics.stop(Phase.MOVE, start);
+			report.add(Type.FAILED, unsuccessfulAttempt("move") + format, args);
+		}
+	}
+
+	/**
+	 * Moves file by atomic rename when source and target are on the same file store, otherwise by {@link #copyAndDelete(Path, Path)}.
+	 * Existing target is never replaced, although atomic rename itself would replace it on some platforms.
+	 * @return {@code true} when the file has been copied, {@code false} when renamed
+	 */
+	boolean move(Path source, Path target) throws IOException {
+		if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+			throw new FileAlreadyExistsException(target.toString());
+		}
+		if (fileStores.sameStore(source.getParent(), target.getParent())) {
+			try {
+				Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+				return false;
+			} catch (AtomicMoveNotSupportedException e) {
+				// e.g. different mounts of the same device
+			}
+		}
+		copyAndDelete(source, target);
+		return true;
+	}
+
+	/**
+	 * Copies file by transfer between channels, which the operating system performs without copying through the JVM where possible,
+	 * forces the copy to the device and only then deletes the source, so that crash never loses the file.
+	 * When the transfer makes no progress, the rest is copied through buffer.
+	 * Incomplete copy is deleted, existing target is never replaced.
+	 */
+	static void copyAndDelete(Path source, Path target) throws IOException {
+		FileTime lastModified = Files.getLastModifiedTime(source);
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+			FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			boolean copied = false;
+			try {
+				long size = in.size();
+				long position = 0;
+				for (int stalled = 0; position < size && stalled < MAX_STALLED_TRANSFERS; ) {
+					long transferred = in.transferTo(position, size - position, out);
+					if (transferred == 0 && position >= in.size()) {
+						throw new IOException("File " + source + " truncated while copied");
+					}
+					stalled = transferred == 0 ? stalled + 1 : 0;
+					position += transferred;
+				}
+				ByteBuffer buffer = position < size ? ByteBuffer.allocate(COPY_BUFFER_SIZE) : null;
+				while (position < size) {
+					buffer.clear();
+					buffer.limit((int)Math.min(COPY_BUFFER_SIZE, size - position));
+					int read = in.read(buffer, position);
+					if (read < 0) {
+						throw new IOException("File " + source + " truncated while copied");
+					}
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					position += read;
+				}
+				if (position != in.size() || out.size() != position) {
+					throw new IOException("File " + source + " changed while copied");
+				}
+				out.force(true);
+				copied = true;
+			} finally {
+				out.close();
+				if (!copied) {
+					Files.deleteIfExists(target);
+				}
+			}
+		}
+		Files.setLastModifiedTime(target, lastModified);
+		Files.delete(source);
+	}
+
+	String unsuccessfulAttempt(String operation) {
+		return "unsuccessful attempt to perform " + operation + " with success message: ";
+	}
+
 }
@@ -0,0 +1,62 @@
+package cz.zalusky.orgmedia;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of duplicate detection stages, see {@link ContentIndex#find(java.nio.file.Path, java.nio.file.Path)}.
+ * @author Tomas Zalusky
+ */
+public class DedupStatistics {
+
+	final LongAdder candidates = new LongAdder();
+
+	final LongAdder eliminatedBySize = new LongAdder();
+
+	final LongAdder eliminatedByFilter = new LongAdder();
+
+	final LongAdder eliminatedBySample = new LongAdder();
+
+	final LongAdder eliminatedByHash = new LongAdder();
+
+	final LongAdder eliminatedByComparison = new LongAdder();
+
+	final LongAdder fullyRead = new LongAdder();
+
+	public long getCandidates() {
+		return candidates.sum();
+	}
+
+	public long getEliminatedBySize() {
+		return eliminatedBySize.sum();
+	}
+
+	/**
+	 * Candidates of equal size not read because {@link ContentFilter} proved the content is not in the library.
+	 */
+	public long getEliminatedByFilter() {
+		return eliminatedByFilter.sum();
+	}
+
+	public long getEliminatedBySample() {
+		return eliminatedBySample.sum();
+	}
+
+	public long getEliminatedByHash() {
+		return eliminatedByHash.sum();
+	}
+
+	public long getEliminatedByComparison() {
+		return eliminatedByComparison.sum();
+	}
+
+	public long getFullyRead() {
+		return fullyRead.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d candidates, eliminated %d by size, %d by Bloom filter, %d by head/tail sample, %d by full hash, %d by byte comparison, %d files read fully",
+				getCandidates(),getEliminatedBySize(),getEliminatedByFilter(),getEliminatedBySample(),getEliminatedByHash(),getEliminatedByComparison(),getFullyRead());
+	}
+
+}
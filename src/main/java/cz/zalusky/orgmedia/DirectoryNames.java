@@ -0,0 +1,52 @@
+package cz.zalusky.orgmedia;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Strings;
+
+/**
+ * Names of children of single target directory cached for single run, allocates free names for renamed files.
+ * Free name is made by appending underscores before the extension ({@code IMG_1234.JPG}, {@code IMG_1234_.JPG}, {@code IMG_1234__.JPG}, ...),
+ * number of underscores already tried is remembered for each name, so that series of conflicts does not start from scratch.
+ * @author Tomas Zalusky
+ */
+class DirectoryNames {
+
+	private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Name -> number of underscores of the last allocated free name.
+	 */
+	private final Map<String,Integer> underscores = new ConcurrentHashMap<>();
+
+	boolean contains(String name) {
+		return names.contains(name);
+	}
+
+	void add(String name) {
+		names.add(name);
+	}
+
+	/**
+	 * @return given name if it is free, otherwise the first free name with underscores appended
+	 */
+	String allocate(String name) {
+		if (!names.contains(name)) {
+			return name;
+		}
+		int dot = name.lastIndexOf('.');
+		String base = dot == -1 ? name : name.substring(0,dot);
+		String extension = dot == -1 ? "" : name.substring(dot);
+		int count = underscores.getOrDefault(name,0);
+		String result;
+		do {
+			count++;
+			result = base + Strings.repeat("_",count) + extension;
+		} while (names.contains(result));
+		underscores.put(name,count);
+		return result;
+	}
+
+}
@@ -0,0 +1,65 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cz.zalusky.orgmedia.RunMetrics.Phase;
+
+/**
+ * Conversion of JPEG files of any name (scans, images from messengers, renamed files) by date of their EXIF {@code DateTimeOriginal},
+ * which is read from header of each file by {@link ExifDate}.
+ * @author Tomas Zalusky
+ */
+public class Exif1Conversion extends Conversion {
+
+	static final Pattern VALID_FILES = Pattern.compile("(?i).*\\.jpe?g");
+
+	@Override
+	void scan(Path source, Path target, TargetState state, List<Task> tasks) {
+		for (ListedFile sourceChild : listFiles(source, state)) {
+			Task task = Task.add(tasks);
+			Report report = task.report;
+			if (sourceChild.isDirectory()) {
+				report.skipped("file %s is a directory, skipped",sourceChild.path);
+				continue;
+			}
+			if (classify(VALID_FILES, sourceChild, state) == null) {
+				report.skipped("file %s is not .jpg or .jpeg, skipped",sourceChild.path);
+				continue;
+			}
+			Matcher m = dateTimeOriginal(sourceChild, state);
+			if (m == null) {
+				report.skipped("file %s has no EXIF DateTimeOriginal, skipped",sourceChild.path);
+				continue;
+			}
+			Path targetDayDirectory = targetDayDirectory(target, m.group(1), m.group(2), m.group(3), sourceChild.path, state, task);
+			if (targetDayDirectory == null) {
+				continue;
+			}
+			task.schedule(targetDayDirectory, t -> place(sourceChild, targetDayDirectory, state, t));
+		}
+	}
+
+	@Override
+	void cleanUp(Path source, Task task) {
+		task.deleteIfEmpty(source);
+	}
+
+	/**
+	 * @return matcher of {@code DateTimeOriginal} whose groups are year, month and day, {@code null} when the file has none or cannot be read
+	 */
+	private static Matcher dateTimeOriginal(ListedFile file, TargetState state) {
+		long start = RunMetrics.start();
+		try {
+			return ExifDate.read(file.path, state.getMetrics().bytesRead);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			state.getMetrics().stop(Phase.CLASSIFY, start);
+		}
+	}
+
+}
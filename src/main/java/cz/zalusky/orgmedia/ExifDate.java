@@ -0,0 +1,195 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reader of EXIF tag {@code DateTimeOriginal} of JPEG file, which reads only header of the file by small positioned reads.
+ * Segments preceding APP1 are skipped by reading their markers, TIFF structure of APP1 is parsed from its first {@link #WINDOW} bytes,
+ * values lying beyond are read by further positioned reads bounded by the segment, so that thumbnail and image data are never read.
+ * @author Tomas Zalusky
+ */
+class ExifDate {
+
+	/**
+	 * Bytes of APP1 read at once, large enough for IFD0 and Exif IFD of usual cameras and phones.
+	 */
+	static final int WINDOW = 4096;
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private static final int APP1 = 0xE1;
+
+	private static final int SOS = 0xDA;
+
+	private static final int EXIF_IFD_POINTER = 0x8769;
+
+	private static final int DATE_TIME_ORIGINAL = 0x9003;
+
+	private static final int ASCII = 2;
+
+	private static final int DATE_TIME_LENGTH = 19;
+
+	private static final Pattern DATE_TIME = Pattern.compile("(\\d\\d\\d\\d):(0[1-9]|1[0-2]):(0[1-9]|[12]\\d|3[01]) \\d\\d:\\d\\d:\\d\\d");
+
+	private final FileChannel channel;
+
+	private final LongAdder bytesRead;
+
+	private long tiffStart;
+
+	private long tiffEnd;
+
+	private ByteBuffer window;
+
+	private ExifDate(FileChannel channel, LongAdder bytesRead) {
+		this.channel = channel;
+		this.bytesRead = bytesRead;
+	}
+
+	/**
+	 * @return matcher of {@code DateTimeOriginal} whose groups are year, month and day,
+	 * {@code null} when the file is not JPEG or has no valid {@code DateTimeOriginal}
+	 */
+	static Matcher read(Path file, LongAdder bytesRead) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new ExifDate(channel, bytesRead).dateTimeOriginal();
+		}
+	}
+
+	private Matcher dateTimeOriginal() throws IOException {
+		ByteBuffer soi = read(0, 2, ByteOrder.BIG_ENDIAN);
+		if (soi == null || soi.getShort(0) != (short)0xFFD8) {
+			return null;
+		}
+		long position = 2;
+		for (int i = 0; i < MAX_SEGMENTS; i++) {
+			ByteBuffer marker = read(position, 4, ByteOrder.BIG_ENDIAN);
+			if (marker == null || (marker.get(0) & 0xFF) != 0xFF) {
+				return null;
+			}
+			int type = marker.get(1) & 0xFF;
+			int length = marker.getShort(2) & 0xFFFF;
+			if (type == SOS || length < 2) {
+				return null;
+			}
+			if (type == APP1) {
+				Matcher result = exif(position + 4, position + 2 + length);
+				if (result != null) {
+					return result;
+				} // otherwise e.g. XMP in APP1, Exif may follow
+			}
+			position += 2 + length;
+		}
+		return null;
+	}
+
+	/**
+	 * @param start start of APP1 data, just after its length
+	 * @param end end of APP1 segment
+	 */
+	private Matcher exif(long start, long end) throws IOException {
+		ByteBuffer data = read(start, (int)Math.min(WINDOW, end - start), ByteOrder.BIG_ENDIAN);
+		if (data == null || data.limit() < 14 || data.getInt(0) != 0x45786966 || data.getShort(4) != 0) { // "Exif\0\0"
+			return null;
+		}
+		ByteOrder order;
+		switch (data.getShort(6)) {
+			case 0x4949:
+				order = ByteOrder.LITTLE_ENDIAN;
+				break;
+			case 0x4D4D:
+				order = ByteOrder.BIG_ENDIAN;
+				break;
+			default:
+				return null;
+		}
+		data.position(6);
+		window = data.slice().order(order);
+		tiffStart = start + 6;
+		tiffEnd = end;
+		if (window.getShort(2) != 42) {
+			return null;
+		}
+		ByteBuffer exifIfdPointer = findTag(window.getInt(4) & 0xFFFFFFFFL, EXIF_IFD_POINTER);
+		if (exifIfdPointer == null) {
+			return null;
+		}
+		ByteBuffer dateTimeOriginal = findTag(exifIfdPointer.getInt(8) & 0xFFFFFFFFL, DATE_TIME_ORIGINAL);
+		if (dateTimeOriginal == null || dateTimeOriginal.getShort(2) != ASCII || dateTimeOriginal.getInt(4) < DATE_TIME_LENGTH) {
+			return null;
+		}
+		ByteBuffer value = bytes(dateTimeOriginal.getInt(8) & 0xFFFFFFFFL, DATE_TIME_LENGTH);
+		if (value == null) {
+			return null;
+		}
+		byte[] chars = new byte[DATE_TIME_LENGTH];
+		value.get(chars);
+		Matcher result = DATE_TIME.matcher(new String(chars, Charsets.US_ASCII));
+		return result.matches() ? result : null;
+	}
+
+	/**
+	 * @return 12 bytes of IFD entry of given tag, {@code null} when there is no such entry
+	 */
+	private ByteBuffer findTag(long ifdOffset, int tag) throws IOException {
+		ByteBuffer count = bytes(ifdOffset, 2);
+		if (count == null) {
+			return null;
+		}
+		int entries = count.getShort(0) & 0xFFFF;
+		ByteBuffer ifd = bytes(ifdOffset + 2, entries * 12);
+		if (ifd == null) {
+			return null;
+		}
+		for (int i = 0; i < entries; i++) {
+			if ((ifd.getShort(i * 12) & 0xFFFF) == tag) {
+				ifd.position(i * 12);
+				ifd.limit(i * 12 + 12);
+				return ifd.slice().order(window.order());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return bytes at given offset from TIFF header, from window or by positioned read, {@code null} when they lie beyond APP1
+	 */
+	private ByteBuffer bytes(long offset, int length) throws IOException {
+		if (offset < 0 || tiffStart + offset + length > tiffEnd) {
+			return null;
+		}
+		if (offset + length <= window.limit()) {
+			ByteBuffer result = window.duplicate();
+			result.position((int)offset);
+			result.limit((int)offset + length);
+			return result.slice().order(window.order());
+		}
+		return read(tiffStart + offset, length, window.order());
+	}
+
+	/**
+	 * @return buffer of given length, {@code null} when the file ends earlier
+	 */
+	private ByteBuffer read(long position, int length, ByteOrder order) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate(length).order(order);
+		while (result.hasRemaining()) {
+			if (channel.read(result, position + result.position()) == -1) {
+				return null;
+			}
+		}
+		bytesRead.add(length);
+		result.flip();
+		return result;
+	}
+
+}
@@ -0,0 +1,55 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * File stores (devices) of directories, so that files can be grouped by whether they can be moved by rename.
+ * Stores are cached by directory since finding store of path is expensive on some platforms (e.g. Linux reads mount table for each query).
+ * Directory which does not exist yet belongs to store of its nearest existing ancestor.
+ * @author Tomas Zalusky
+ */
+class FileStores {
+
+	private final Map<Path,Optional<FileStore>> stores = new ConcurrentHashMap<>();
+
+	/**
+	 * @return {@code false} when the directories are known to be on different stores, {@code true} when they are on the same store
+	 * or the store of any of them cannot be found, so that rename is attempted
+	 */
+	boolean sameStore(Path directory1, Path directory2) {
+		if (directory1.getFileSystem() != directory2.getFileSystem()) {
+			return false;
+		}
+		Optional<FileStore> store1 = store(directory1);
+		Optional<FileStore> store2 = store(directory2);
+		return !store1.isPresent() || !store2.isPresent() || store1.get().equals(store2.get());
+	}
+
+	private Optional<FileStore> store(Path directory) {
+		Path absolute = directory.toAbsolutePath();
+		Optional<FileStore> result = stores.get(absolute);
+		if (result == null) {
+			result = findStore(absolute);
+			stores.put(absolute,result);
+		}
+		return result;
+	}
+
+	private static Optional<FileStore> findStore(Path directory) {
+		for (Path existing = directory; existing != null; existing = existing.getParent()) {
+			try {
+				return Optional.of(Files.getFileStore(existing));
+			} catch (IOException e) {
+				// not created yet, try parent
+			}
+		}
+		return Optional.empty();
+	}
+
+}
@@ -0,0 +1,27 @@
+package cz.zalusky.orgmedia;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content indexes kept in memory between runs of long-running process, one per target, shared by all conversions into the target.
+ * Index is loaded from file only for the first run into the target or when the index file has been changed by other process.
+ * @author Tomas Zalusky
+ */
+class IndexCache {
+
+	private final Map<Path,ContentIndex> indexes = new HashMap<>();
+
+	synchronized ContentIndex load(Path target, RunMetrics metrics) {
+		Path key = target.toAbsolutePath().normalize();
+		ContentIndex previous = indexes.get(key);
+		ContentIndex result = previous == null ? null : previous.reuse(metrics);
+		if (result == null) {
+			result = ContentIndex.load(target,metrics);
+		}
+		indexes.put(key,result);
+		return result;
+	}
+
+}
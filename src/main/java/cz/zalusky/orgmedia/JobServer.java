@@ -0,0 +1,262 @@
+package cz.zalusky.orgmedia;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Long-running server performing conversion jobs in warm JVM, so that each camera card or phone does not pay JVM startup,
+ * cold JIT and loading of content index of the target. Content indexes are kept in memory by {@link IndexCache} between jobs.
+ * Directory listings are not cached, since modification time of directory does not change when its files are modified in place,
+ * the target is therefore listed again by each job, which reads no content of files unchanged since previous job.
+ * <p>
+ * Server listens on loopback only. Since jobs move and delete files, connection must start with line {@code TOKEN\t<token>}
+ * with random token generated at startup and stored in {@link #tokenFile(Path, int) token file} readable only by its owner,
+ * other connections (other local users, web pages posting to loopback) are closed without performing anything.
+ * <p>
+ * Each job is single line {@code <conversion>\t<source>\t<target>}, jobs of all clients are queued
+ * and performed one after another. Response consists of lines of report, line {@code Summary: ...} and empty line;
+ * line {@code ERROR: ...} followed by empty line when the job could not be performed. Client may send several jobs over one connection,
+ * the connection is closed after the first line which is not valid job.
+ * @author Tomas Zalusky
+ */
+public class JobServer implements Closeable {
+
+	static final String SUMMARY = "Summary: ";
+
+	private static final String TOKEN = "TOKEN\t";
+
+	private static final String INVALID_JOB = "ERROR: invalid job ";
+
+	private static final String TOKEN_FILE_PREFIX = ".orgmedia-server-";
+
+	private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+	private final Map<String,Conversion> conversions;
+
+	private final ServerSocket serverSocket;
+
+	private final ExecutorService jobs = Executors.newSingleThreadExecutor();
+
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+
+	private final IndexCache indexCache = new IndexCache();
+
+	private final String token;
+
+	private final Path tokenFile;
+
+	/**
+	 * @param port port on loopback, {@code 0} for any free port
+	 */
+	public JobServer(Map<String,Conversion> conversions, int port) {
+		this(conversions, port, userHome());
+	}
+
+	/**
+	 * @param tokenDirectory directory of token file
+	 */
+	JobServer(Map<String,Conversion> conversions, int port, Path tokenDirectory) {
+		this.conversions = conversions;
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		this.token = BaseEncoding.base16().lowerCase().encode(random);
+		try {
+			this.serverSocket = new ServerSocket(port,50,InetAddress.getLoopbackAddress());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.tokenFile = tokenFile(tokenDirectory, serverSocket.getLocalPort());
+		try {
+			writeToken(tokenFile, token);
+		} catch (IOException e) {
+			close(serverSocket);
+			throw new UncheckedIOException(e);
+		}
+		for (Conversion conversion : conversions.values()) {
+			conversion.setIndexCache(indexCache);
+			conversion.setKeepReportContent(true);
+		}
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public Path getTokenFile() {
+		return tokenFile;
+	}
+
+	/**
+	 * File with token of server listening on given port.
+	 */
+	static Path tokenFile(Path directory, int port) {
+		return directory.resolve(TOKEN_FILE_PREFIX + port);
+	}
+
+	private static Path userHome() {
+		return Paths.get(System.getProperty("user.home"));
+	}
+
+	/**
+	 * Writes token into new file, which is created readable only by the owner where file system supports POSIX permissions.
+	 * On other file systems the file inherits permissions of the directory, which is user home by default.
+	 */
+	private static void writeToken(Path file, String token) throws IOException {
+		Files.deleteIfExists(file); // left by server which has not been closed
+		if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(file);
+		}
+		Files.write(file, token.getBytes(Charsets.US_ASCII), StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Accepts connections until closed from other thread.
+	 */
+	public void run() {
+		try {
+			while (!serverSocket.isClosed()) {
+				Socket socket = serverSocket.accept();
+				connections.execute(() -> serve(socket));
+			}
+		} catch (SocketException e) {
+			// closed
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			serverSocket.close();
+			Files.deleteIfExists(tokenFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			connections.shutdownNow();
+			jobs.shutdownNow();
+		}
+	}
+
+	private static void close(ServerSocket serverSocket) {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// failure to write token is reported
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),Charsets.UTF_8));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(),Charsets.UTF_8))) {
+			String first = in.readLine();
+			if (first == null || !authorized(first)) {
+				out.print("ERROR: not authorized\n\n");
+				return;
+			}
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				List<String> response = perform(line);
+				for (String responseLine : response) {
+					out.print(responseLine + "\n");
+				}
+				out.print("\n");
+				out.flush();
+				if (response.size() == 1 && response.get(0).startsWith(INVALID_JOB)) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			// client disconnected
+		}
+	}
+
+	private boolean authorized(String line) {
+		return line.startsWith(TOKEN) && MessageDigest.isEqual(token.getBytes(Charsets.US_ASCII),line.substring(TOKEN.length()).getBytes(Charsets.US_ASCII));
+	}
+
+	/**
+	 * Queues job and waits for its completion.
+	 * @return lines of response without terminating empty line
+	 */
+	List<String> perform(String job) {
+		List<String> response = new ArrayList<>();
+		List<String> fields = TAB_SPLITTER.splitToList(job);
+		Conversion conversion = fields.size() == 3 ? conversions.get(fields.get(0)) : null;
+		if (conversion == null) {
+			response.add(INVALID_JOB + job + ", expected <conversion>\\t<source>\\t<target> with conversion one of " + conversions.keySet());
+			return response;
+		}
+		Future<Report> report = jobs.submit(() -> conversion.execute(Paths.get(fields.get(1)),Paths.get(fields.get(2))));
+		try {
+			response.addAll(report.get().getContent());
+			response.add(SUMMARY + report.get().getSummary());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response.add("ERROR: server stopped");
+		} catch (ExecutionException e) {
+			response.add("ERROR: " + e.getCause());
+		}
+		return response;
+	}
+
+	/**
+	 * Submits job to server running on loopback, authenticated by token file in user home, and returns its response.
+	 */
+	public static List<String> submit(int port, String conversion, String source, String target) {
+		return submit(userHome(), port, conversion, source, target);
+	}
+
+	static List<String> submit(Path tokenDirectory, int port, String conversion, String source, String target) {
+		String token;
+		try {
+			token = new String(Files.readAllBytes(tokenFile(tokenDirectory, port)), Charsets.US_ASCII);
+		} catch (IOException e) {
+			throw new UncheckedIOException("No token of server on port " + port + ", is the server running under this user?", e);
+		}
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),Charsets.UTF_8));
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),Charsets.UTF_8))) {
+			out.print(TOKEN + token + "\n");
+			out.print(conversion + "\t" + Paths.get(source).toAbsolutePath() + "\t" + Paths.get(target).toAbsolutePath() + "\n");
+			out.flush();
+			List<String> result = new ArrayList<>();
+			for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+				result.add(line);
+			}
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Write-ahead journal of execution of {@link Plan}, stored in the target root while the plan is being executed.
+ * The plan is written, terminated by end mark and synced before first operation is performed,
+ * then each performed operation is appended. Completed tasks are synced in batches by {@link #checkpoint()},
+ * so that large imports do not pay one device sync per file. The journal is deleted when execution completes.
+ * <p>
+ * Journal left by interrupted run is read by {@link #interruptedPlan(Path)} and {@link #resume(Plan, int, long)}, the run is resumed from the plan in the journal
+ * without planning again, operations already performed are skipped. Operations performed but not journaled before the interruption
+ * are recognized by their effect, see {@link Conversion#repair(Operation, RunMetrics, Report)}, which also covers operations
+ * journaled but not synced by the last checkpoint.
+ * <p>
+ * When journal is {@link #disabled(Plan) disabled}, nothing is written and interrupted run has to be repeated by new conversion.
+ * @author Tomas Zalusky
+ */
+class Journal {
+
+	static final String FILE_NAME = ".orgmedia-journal";
+
+	private static final String END_OF_PLAN = "END";
+
+	private static final String DONE = "DONE\t";
+
+	static final int DEFAULT_SYNC_TASKS = 256;
+
+	static final long DEFAULT_SYNC_MILLIS = 1000;
+
+	private final Path file;
+
+	private final FileChannel channel;
+
+	private final Writer writer;
+
+	private final Map<Task,Integer> taskIndexes = new IdentityHashMap<>();
+
+	private final Set<String> completed;
+
+	private final boolean resumed;
+
+	private final RunMetrics metrics;
+
+	private final int syncTasks;
+
+	private final long syncNanos;
+
+	private int tasksSinceSync;
+
+	private long lastSync = System.nanoTime();
+
+	private Journal(Path file, Plan plan, Set<String> completed, boolean resumed, int syncTasks, long syncMillis) throws IOException {
+		this.file = file;
+		this.channel = file == null ? null : FileChannel.open(file,StandardOpenOption.WRITE,StandardOpenOption.APPEND);
+		this.writer = file == null ? null : new OutputStreamWriter(Channels.newOutputStream(channel),Charsets.UTF_8);
+		this.completed = completed;
+		this.resumed = resumed;
+		this.metrics = plan.metrics;
+		this.syncTasks = syncTasks;
+		this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+		for (Task task : plan.tasks) {
+			taskIndexes.put(task,taskIndexes.size());
+		}
+		taskIndexes.put(plan.cleanUp,taskIndexes.size());
+	}
+
+	/**
+	 * Starts journal of execution of given plan, synced after default number of tasks or time.
+	 */
+	static Journal start(Plan plan) {
+		return start(plan,DEFAULT_SYNC_TASKS,DEFAULT_SYNC_MILLIS);
+	}
+
+	/**
+	 * Starts journal of execution of given plan.
+	 * @param syncTasks number of completed tasks after which the journal is synced
+	 * @param syncMillis time after which completed tasks are synced regardless of their number
+	 */
+	static Journal start(Plan plan, int syncTasks, long syncMillis) {
+		Path file = plan.getTarget().resolve(FILE_NAME);
+		try {
+			plan.write(file);
+			Journal result = new Journal(file,plan,new HashSet<>(),false,syncTasks,syncMillis);
+			result.writer.write(END_OF_PLAN + "\n");
+			result.sync();
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return journal which does not write anything, for runs which need not be resumable
+	 */
+	static Journal disabled(Plan plan) {
+		try {
+			return new Journal(null,plan,new HashSet<>(),false,Integer.MAX_VALUE,Long.MAX_VALUE / 2);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return plan of interrupted run with given target, {@code null} when there is none.
+	 * Journal whose plan is incomplete is deleted, since no operation has been performed by its run.
+	 */
+	static Plan interruptedPlan(Path target) {
+		Path file = target.resolve(FILE_NAME);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			List<String> lines = Files.readAllLines(file,Charsets.UTF_8);
+			int end = lines.indexOf(END_OF_PLAN);
+			if (end == -1) {
+				Files.delete(file);
+				return null;
+			}
+			return Plan.read(file,lines.subList(0,end));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Continues journal of interrupted run, whose plan has been read by {@link #interruptedPlan(Path)}.
+	 */
+	static Journal resume(Plan plan, int syncTasks, long syncMillis) {
+		Path file = plan.getTarget().resolve(FILE_NAME);
+		try {
+			Set<String> completed = new HashSet<>();
+			for (String line : Files.readAllLines(file,Charsets.UTF_8)) {
+				if (line.startsWith(DONE)) { // last line may be incomplete, it does not match any operation then
+					completed.add(line.substring(DONE.length()));
+				}
+			}
+			return new Journal(file,plan,completed,true,syncTasks,syncMillis);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Whether the journal continues interrupted run, so that operations may have been performed without being journaled.
+	 */
+	boolean isResumed() {
+		return resumed;
+	}
+
+	int getCompletedCount() {
+		return completed.size();
+	}
+
+	boolean isCompleted(Task task, int operation) {
+		return completed.contains(key(task,operation));
+	}
+
+	synchronized void completed(Task task, int operation) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.write(DONE + key(task,operation) + "\n");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Marks completion of task, makes operations journaled so far durable when enough tasks or time have passed since the last sync.
+	 */
+	synchronized void checkpoint() {
+		tasksSinceSync++;
+		if (tasksSinceSync >= syncTasks || System.nanoTime() - lastSync >= syncNanos) {
+			sync();
+		}
+	}
+
+	/**
+	 * Makes operations journaled so far durable.
+	 */
+	synchronized void sync() {
+		tasksSinceSync = 0;
+		lastSync = System.nanoTime();
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+			channel.force(false);
+			metrics.journalSyncs.increment();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes journal, deleting it when execution has completed.
+	 */
+	synchronized void close(boolean completed) {
+		if (writer == null) {
+			return;
+		}
+		try {
+			if (!completed) {
+				sync(); // operations performed before failure need not be repaired
+			}
+			writer.close();
+			if (completed) {
+				Files.delete(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private String key(Task task, int operation) {
+		return taskIndexes.get(task) + "\t" + operation;
+	}
+
+}
@@ -0,0 +1,115 @@
+package cz.zalusky.orgmedia;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Child of directory together with its attributes, read once when the directory is listed.
+ * Directory is listed by {@link Files#walkFileTree(Path, java.util.Set, int, java.nio.file.FileVisitor) walk} of depth 1,
+ * which takes attributes from directory entries where the file system returns them (e.g. NTFS, SMB) without further request,
+ * elsewhere single stat is needed instead of separate queries of existence, type, size and modification time.
+ * @author Tomas Zalusky
+ */
+class ListedFile {
+
+	static final Comparator<ListedFile> BY_NAME = Comparator.comparing(ListedFile::getName,String.CASE_INSENSITIVE_ORDER).thenComparing(ListedFile::getName);
+
+	final Path path;
+
+	final BasicFileAttributes attributes;
+
+	ListedFile(Path path, BasicFileAttributes attributes) {
+		this.path = path;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Children of given directory in order given by file system, children which disappear while listed are left out.
+	 * Attributes of symbolic link are read again from its target, as if the link was the target.
+	 * @param metrics metrics of the run, one listing and one stat per child are counted
+	 */
+	static List<ListedFile> list(Path dir, RunMetrics metrics) {
+		List<ListedFile> result = new ArrayList<>();
+		metrics.listings.increment();
+		try {
+			Files.walkFileTree(dir,EnumSet.noneOf(FileVisitOption.class),1,new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path child, BasicFileAttributes attributes) throws IOException {
+					if (child.equals(dir)) {
+						throw new NotDirectoryException(dir.toString());
+					}
+					metrics.stats.increment();
+					try {
+						result.add(new ListedFile(child,attributes.isSymbolicLink() ? Files.readAttributes(child,BasicFileAttributes.class) : attributes));
+					} catch (NoSuchFileException e) {
+						// link target deleted meanwhile
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path child, IOException e) throws IOException {
+					if (child.equals(dir) || !(e instanceof NoSuchFileException)) {
+						throw e;
+					}
+					return FileVisitResult.CONTINUE; // deleted meanwhile
+				}
+
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Children of given directory sorted by name, so that conversion does not depend on order given by file system.
+	 */
+	static List<ListedFile> listSorted(Path dir, RunMetrics metrics) {
+		return list(dir,metrics).stream().sorted(BY_NAME).collect(toList());
+	}
+
+	String getName() {
+		return path.getFileName().toString();
+	}
+
+	boolean isDirectory() {
+		return attributes.isDirectory();
+	}
+
+	boolean isFile() {
+		return attributes.isRegularFile();
+	}
+
+	long size() {
+		return attributes.size();
+	}
+
+	long lastModified() {
+		return attributes.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Path of the file, so that listed file can be used as argument of report messages.
+	 */
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+}
@@ -1,7 +1,13 @@
 package cz.zalusky.orgmedia;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
@@ -14,30 +20,123 @@ public class Main {
 	public static final Map<String,Conversion> conversions = ImmutableMap.of(
 			"canon1",new Canon1Conversion(),
 			"samsung1",new Samsung1Conversion(),
-			"huaweixiaomi1",new HuaweiXiaomi1Conversion()
+			"huaweixiaomi1",new HuaweiXiaomi1Conversion(),
+			"mixed1",new Mixed1Conversion(),
+			"exif1",new Exif1Conversion()
 	);
 	
+	private static final String USAGE = "Usage: java -jar orgmedia.jar [--workers=<n>] [--thread-per-task=<max concurrent tasks>] [--global-dedup] [--bloom-filter=<false positive rate>,<max MB>] [--copy-lanes=<n>,<min MB>] [--no-journal | --journal-sync=<tasks>,<ms>] [--plan=<plan file to write> | --execute-plan=<plan file to execute> | --watch=<quiet seconds> | --submit=<server port>] <conversion> <from> [<conversion> <from> ...] <to>"
+			+ "\n   or: java -jar orgmedia.jar [--workers=<n>] [--thread-per-task=<max concurrent tasks>] [--global-dedup] [--bloom-filter=<false positive rate>,<max MB>] [--copy-lanes=<n>,<min MB>] [--no-journal | --journal-sync=<tasks>,<ms>] --server=<port>";
+
 	public static void main(String[] args) throws IOException {
-		if (args.length != 3) {
-			throw new RuntimeException("Usage: java -jar orgmedia.jar <conversion> <from> <to>");
+		Map<String,String> options = new LinkedHashMap<>();
+		int firstArgument = 0;
+		while (firstArgument < args.length && args[firstArgument].startsWith("--")) {
+			String option = args[firstArgument++];
+			int equals = option.indexOf('=');
+			options.put(equals == -1 ? option : option.substring(0,equals),equals == -1 ? "" : option.substring(equals + 1));
 		}
-		String conversionString = args[0];
-		Conversion conversion = conversions.get(conversionString);
-		if (conversion == null) {
-			throw new RuntimeException("Invalid conversion " + conversionString + ", valid conversions are " + conversions.keySet());
+		List<String> arguments = Arrays.asList(args).subList(firstArgument,args.length);
+		if (options.containsKey("--server") && arguments.isEmpty()) {
+			conversions.values().forEach(conversion -> options.forEach((name,value) -> configure(conversion,name,value)));
+			JobServer server = new JobServer(conversions, Integer.parseInt(options.get("--server")));
+			System.out.println("Accepting conversion jobs on port " + server.getPort() + " authenticated by token in " + server.getTokenFile() + ".");
+			server.run();
+			return;
+		}
+		if (arguments.size() < 3 || arguments.size() % 2 == 0) {
+			throw new RuntimeException(USAGE);
 		}
-		String sourceString = args[1];
-		File source = new File(sourceString);
-		if (!source.exists() || !source.isDirectory()) {
-			throw new RuntimeException("The source location " + source + " doesn't exist or is not a directory");
+		Map<Path,Conversion> sources = new LinkedHashMap<>();
+		for (int i = 0; i + 1 < arguments.size(); i += 2) {
+			String conversionString = arguments.get(i);
+			Conversion sourceConversion = conversions.get(conversionString);
+			if (sourceConversion == null) {
+				throw new RuntimeException("Invalid conversion " + conversionString + ", valid conversions are " + conversions.keySet());
+			}
+			Path source = Paths.get(arguments.get(i + 1));
+			if (!Files.isDirectory(source)) {
+				throw new RuntimeException("The source location " + source + " doesn't exist or is not a directory");
+			}
+			if (sources.put(source,sourceConversion) != null) {
+				throw new RuntimeException("The source location " + source + " is given more than once");
+			}
 		}
-		String targetString = args[2];
-		File target = new File(targetString);
-		if (!target.exists() || !target.isDirectory()) {
+		String conversionString = arguments.get(0);
+		Conversion conversion = conversions.get(conversionString);
+		String sourceString = arguments.get(1);
+		Path source = Paths.get(sourceString);
+		String targetString = arguments.get(arguments.size() - 1);
+		Path target = Paths.get(targetString);
+		if (!Files.isDirectory(target)) {
 			throw new RuntimeException("The target location " + target + " doesn't exist or is not a directory");
 		}
-		conversion.execute(source, target);
+		if (sources.size() > 1 && (options.containsKey("--plan") || options.containsKey("--execute-plan") || options.containsKey("--watch") || options.containsKey("--submit"))) {
+			throw new RuntimeException("Several sources can be converted only directly, " + USAGE);
+		}
+		if (options.containsKey("--submit")) {
+			JobServer.submit(Integer.parseInt(options.get("--submit")), conversionString, sourceString, targetString).forEach(System.out::println);
+			return;
+		}
+		for (Conversion sourceConversion : new HashSet<>(sources.values())) {
+			sourceConversion.setKeepReportContent(false);
+			options.forEach((name,value) -> configure(sourceConversion,name,value));
+		}
+		if (options.containsKey("--plan")) {
+			Path planFile = Paths.get(options.get("--plan"));
+			Plan plan = conversion.plan(source, target);
+			plan.write(planFile);
+			System.out.println("Planned conversion of " + source + " to " + target + " into " + planFile.toAbsolutePath() + ".");
+			System.out.println(plan.getSummary());
+		} else if (options.containsKey("--watch")) {
+			Watcher watcher = new Watcher(conversion, source, target);
+			watcher.setQuietMillis(Long.parseLong(options.get("--watch")) * 1000);
+			System.out.println("Watching " + source + " for new files to convert to " + target + ".");
+			watcher.run();
+			return;
+		} else if (options.containsKey("--execute-plan")) {
+			conversion.execute(Plan.read(Paths.get(options.get("--execute-plan"))));
+		} else {
+			conversion.execute(sources, target);
+		}
 		System.in.read();
 	}
 
+	private static void configure(Conversion conversion, String name, String value) {
+		switch (name) {
+			case "--workers":
+				conversion.setWorkers(Integer.parseInt(value));
+				break;
+			case "--thread-per-task":
+				conversion.setThreadPerTask(Integer.parseInt(value));
+				break;
+			case "--global-dedup":
+				conversion.setGlobalDedup(true);
+				break;
+			case "--bloom-filter":
+				int comma = value.indexOf(',');
+				conversion.setContentFilter(Double.parseDouble(value.substring(0,comma)),Long.parseLong(value.substring(comma + 1)) << 20);
+				break;
+			case "--copy-lanes":
+				int separator = value.indexOf(',');
+				conversion.setCopyLanes(Integer.parseInt(value.substring(0,separator)),Long.parseLong(value.substring(separator + 1)) << 20);
+				break;
+			case "--no-journal":
+				conversion.setJournal(false);
+				break;
+			case "--journal-sync":
+				int tasksEnd = value.indexOf(',');
+				conversion.setJournalSync(Integer.parseInt(value.substring(0,tasksEnd)),Long.parseLong(value.substring(tasksEnd + 1)));
+				break;
+			case "--plan":
+			case "--execute-plan":
+			case "--watch":
+			case "--server":
+			case "--submit":
+				break;
+			default:
+				throw new RuntimeException("Invalid option " + name + ", " + USAGE);
+		}
+	}
+
 }
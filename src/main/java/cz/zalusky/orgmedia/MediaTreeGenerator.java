@@ -0,0 +1,359 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Generates reproducible source tree of given layout and target tree with files conflicting with the source, for load testing.
+ * Of the source media files, given ratio has equal content with file in target (half of them under the same name, half under different name),
+ * given ratio has name used in target by file with different content, the rest is moved without conflict.
+ * <p>
+ * File sizes are distributed log-uniformly between given bounds, separately for photos and videos.
+ * Sparse files are written by default: only first and last {@link ContentIndex#SAMPLE_SIZE} bytes are random, the rest is a hole,
+ * so that even trees of hundreds of thousands of large files can be generated quickly and occupy little space,
+ * while files still differ in samples used for duplicate detection.
+ * @author Tomas Zalusky
+ */
+public class MediaTreeGenerator {
+
+	public enum Layout {
+
+		/**
+		 * {@code YYYY_MM_DD/IMG_####.JPG}, {@code YYYY_MM_DD/MVI_####.AVI} with {@code MVI_####.THM} thumbnail.
+		 */
+		CANON(Canon1Conversion::new),
+
+		/**
+		 * {@code YYYYMMDD_HHMMSS.jpg}, {@code YYYYMMDD_HHMMSS(n).jpg} for more shots in the same second, {@code YYYYMMDD_HHMMSS.mp4}.
+		 */
+		SAMSUNG(Samsung1Conversion::new),
+
+		/**
+		 * {@code IMG_YYYYMMDD_HHMMSS.jpg}, {@code PANO_...jpg}, {@code VID_...mp4}, {@code SL_MO_VID_...mp4}.
+		 */
+		HUAWEI_XIAOMI(HuaweiXiaomi1Conversion::new);
+
+		private final Supplier<Conversion> conversion;
+
+		Layout(Supplier<Conversion> conversion) {
+			this.conversion = conversion;
+		}
+
+		public Conversion newConversion() {
+			return conversion.get();
+		}
+
+	}
+
+	private static final String USAGE = "Usage: java -cp orgmedia.jar cz.zalusky.orgmedia.MediaTreeGenerator"
+			+ " [--seed=<n>] [--files=<n>] [--days=<n>] [--video-ratio=<0..1>] [--duplicate-ratio=<0..1>] [--collision-ratio=<0..1>]"
+			+ " [--photo-sizes=<min>..<max>] [--video-sizes=<min>..<max>] [--dense] <canon|samsung|huawei_xiaomi> <source> <target>";
+
+	private static final DateTimeFormatter CANON_DAY = DateTimeFormatter.ofPattern("yyyy_MM_dd");
+
+	private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+	private static final int CANON_NUMBERS = 10000;
+
+	private static final int TIME_STEP = 37; // coprime with seconds per day, so that times within day do not repeat
+
+	private final Layout layout;
+
+	private long seed;
+
+	private int files = 1000;
+
+	private int days = 30;
+
+	private LocalDate firstDay = LocalDate.of(2015,1,1);
+
+	private double videoRatio = 0.1;
+
+	private long minPhotoSize = 1 << 20;
+
+	private long maxPhotoSize = 8 << 20;
+
+	private long minVideoSize = 10 << 20;
+
+	private long maxVideoSize = 500 << 20;
+
+	private double duplicateRatio;
+
+	private double collisionRatio;
+
+	private boolean sparse = true;
+
+	private int duplicates;
+
+	private int collisions;
+
+	public MediaTreeGenerator(Layout layout) {
+		this.layout = layout;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Number of media files in source, thumbnails are not counted.
+	 */
+	public void setFiles(int files) {
+		Preconditions.checkArgument(files >= 0,"Invalid number of files %s",files);
+		this.files = files;
+	}
+
+	/**
+	 * Number of days the files are evenly spread into, starting at first day.
+	 */
+	public void setDays(LocalDate firstDay, int days) {
+		Preconditions.checkArgument(days >= 1,"Invalid number of days %s",days);
+		this.firstDay = firstDay;
+		this.days = days;
+	}
+
+	public void setVideoRatio(double videoRatio) {
+		checkRatio(videoRatio);
+		this.videoRatio = videoRatio;
+	}
+
+	public void setPhotoSizes(long min, long max) {
+		checkSizes(min,max);
+		this.minPhotoSize = min;
+		this.maxPhotoSize = max;
+	}
+
+	public void setVideoSizes(long min, long max) {
+		checkSizes(min,max);
+		this.minVideoSize = min;
+		this.maxVideoSize = max;
+	}
+
+	public void setDuplicateRatio(double duplicateRatio) {
+		checkRatio(duplicateRatio);
+		this.duplicateRatio = duplicateRatio;
+	}
+
+	public void setCollisionRatio(double collisionRatio) {
+		checkRatio(collisionRatio);
+		this.collisionRatio = collisionRatio;
+	}
+
+	/**
+	 * Whether content between head and tail sample is left as a hole, which reads as zeros.
+	 */
+	public void setSparse(boolean sparse) {
+		this.sparse = sparse;
+	}
+
+	/**
+	 * Generates trees into given directories, which are created if they do not exist and must not contain generated names.
+	 * Directories may belong to any file system, e.g. in-memory file system for tests.
+	 * Number of files per day is limited by names of the layout: file numbers of Canon, seconds of day of phones.
+	 * @throws IllegalStateException when generated file already exists
+	 */
+	public void generate(Path source, Path target) {
+		int filesPerDay = (files + days - 1) / days;
+		int maxFilesPerDay = layout == Layout.CANON ? CANON_NUMBERS : SECONDS_PER_DAY;
+		Preconditions.checkArgument(filesPerDay <= maxFilesPerDay,"%s files in %s days exceed %s names per day of layout %s",files,days,maxFilesPerDay,layout);
+		Random random = new Random(seed);
+		duplicates = 0;
+		collisions = 0;
+		String previousTime = null;
+		int version = 0;
+		for (int i = 0; i < files; i++) {
+			LocalDate day = firstDay.plusDays((long)i * days / files);
+			boolean video = random.nextDouble() < videoRatio;
+			int second = (int)((long)i * TIME_STEP % SECONDS_PER_DAY);
+			String time = String.format("%02d%02d%02d",second / 3600,second / 60 % 60,second % 60);
+			if (previousTime != null && version < 9 && random.nextInt(20) == 0) { // another shot in the same second
+				time = previousTime;
+				version++;
+			} else {
+				version = 0;
+			}
+			previousTime = time;
+			Path sourceFile;
+			switch (layout) {
+				case CANON:
+					Path dayDirectory = source.resolve(day.format(CANON_DAY));
+					sourceFile = dayDirectory.resolve(String.format(video ? "MVI_%04d.AVI" : "IMG_%04d.JPG",i % CANON_NUMBERS));
+					if (video) {
+						write(dayDirectory.resolve(String.format("MVI_%04d.THM",i % CANON_NUMBERS)),8 << 10,random.nextLong());
+					}
+					break;
+				case SAMSUNG:
+					sourceFile = source.resolve(day.format(DAY) + "_" + time + (version == 0 ? "" : "(" + version + ")") + (video ? ".mp4" : ".jpg"));
+					break;
+				case HUAWEI_XIAOMI:
+					String prefix = video ? (random.nextInt(10) == 0 ? "SL_MO_VID" : "VID") : (random.nextInt(20) == 0 ? "PANO" : "IMG");
+					sourceFile = source.resolve(prefix + "_" + day.format(DAY) + "_" + time + (version == 0 ? "" : "_" + version) + (video ? ".mp4" : ".jpg"));
+					break;
+				default:
+					throw new IllegalStateException(layout.name());
+			}
+			long size = video ? size(random,minVideoSize,maxVideoSize) : size(random,minPhotoSize,maxPhotoSize);
+			long contentSeed = random.nextLong();
+			write(sourceFile,size,contentSeed);
+			Path targetDirectory = target.resolve(day.format(MONTH)).resolve(day.format(DAY));
+			double conflict = random.nextDouble();
+			if (conflict < duplicateRatio) {
+				String name = random.nextBoolean() ? sourceFile.getFileName().toString() : "COPY_" + sourceFile.getFileName();
+				write(targetDirectory.resolve(name),size,contentSeed);
+				duplicates++;
+			} else if (conflict < duplicateRatio + collisionRatio) {
+				write(targetDirectory.resolve(sourceFile.getFileName().toString()),size(random,minPhotoSize,maxPhotoSize),random.nextLong());
+				collisions++;
+			}
+		}
+		try {
+			Files.createDirectories(source);
+			Files.createDirectories(target);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Number of source files with equal content in target, available after generation.
+	 */
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Number of source files whose name is used in target by file with different content, available after generation.
+	 */
+	public int getCollisions() {
+		return collisions;
+	}
+
+	private static long size(Random random, long min, long max) {
+		return Math.round(Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min))));
+	}
+
+	private void write(Path file, long size, long contentSeed) {
+		Random random = new Random(contentSeed);
+		OpenOption[] options = sparse
+				? new OpenOption[] {StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE}
+				: new OpenOption[] {StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE};
+		try {
+			Files.createDirectories(file.getParent());
+			try (FileChannel channel = FileChannel.open(file,options)) {
+				if (sparse) {
+					byte[] head = new byte[(int)Math.min(size,ContentIndex.SAMPLE_SIZE)];
+					random.nextBytes(head);
+					writeFully(channel,ByteBuffer.wrap(head),0);
+					if (size > 2 * ContentIndex.SAMPLE_SIZE) {
+						byte[] tail = new byte[ContentIndex.SAMPLE_SIZE];
+						random.nextBytes(tail);
+						writeFully(channel,ByteBuffer.wrap(tail),size - tail.length);
+					} else if (size > head.length) {
+						writeFully(channel,ByteBuffer.wrap(new byte[1]),size - 1); // extends the file, the rest is a hole
+					}
+				} else {
+					byte[] buffer = new byte[64 << 10];
+					for (long written = 0; written < size; written += buffer.length) {
+						random.nextBytes(buffer);
+						writeFully(channel,ByteBuffer.wrap(buffer,0,(int)Math.min(buffer.length,size - written)),written);
+					}
+				}
+			}
+		} catch (FileAlreadyExistsException e) {
+			throw new IllegalStateException("Generated file " + file + " already exists, the tree would not match reported counts",e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		long next = position;
+		while (buffer.hasRemaining()) {
+			next += channel.write(buffer,next);
+		}
+	}
+
+	private static void checkRatio(double ratio) {
+		Preconditions.checkArgument(ratio >= 0 && ratio <= 1,"Invalid ratio %s",ratio);
+	}
+
+	private static void checkSizes(long min, long max) {
+		Preconditions.checkArgument(min >= 1 && min <= max,"Invalid sizes %s..%s",min,max);
+	}
+
+	public static void main(String[] args) {
+		Map<String,String> options = new LinkedHashMap<>();
+		int firstArgument = 0;
+		while (firstArgument < args.length && args[firstArgument].startsWith("--")) {
+			String option = args[firstArgument++];
+			int equals = option.indexOf('=');
+			options.put(equals == -1 ? option : option.substring(0,equals),equals == -1 ? "" : option.substring(equals + 1));
+		}
+		List<String> arguments = Arrays.asList(args).subList(firstArgument,args.length);
+		if (arguments.size() != 3) {
+			throw new RuntimeException(USAGE);
+		}
+		MediaTreeGenerator generator = new MediaTreeGenerator(Layout.valueOf(arguments.get(0).toUpperCase()));
+		options.forEach((name,value) -> {
+			switch (name) {
+				case "--seed":
+					generator.setSeed(Long.parseLong(value));
+					break;
+				case "--files":
+					generator.setFiles(Integer.parseInt(value));
+					break;
+				case "--days":
+					generator.setDays(generator.firstDay,Integer.parseInt(value));
+					break;
+				case "--video-ratio":
+					generator.setVideoRatio(Double.parseDouble(value));
+					break;
+				case "--duplicate-ratio":
+					generator.setDuplicateRatio(Double.parseDouble(value));
+					break;
+				case "--collision-ratio":
+					generator.setCollisionRatio(Double.parseDouble(value));
+					break;
+				case "--photo-sizes":
+					generator.setPhotoSizes(Long.parseLong(value.substring(0,value.indexOf(".."))),Long.parseLong(value.substring(value.indexOf("..") + 2)));
+					break;
+				case "--video-sizes":
+					generator.setVideoSizes(Long.parseLong(value.substring(0,value.indexOf(".."))),Long.parseLong(value.substring(value.indexOf("..") + 2)));
+					break;
+				case "--dense":
+					generator.setSparse(false);
+					break;
+				default:
+					throw new RuntimeException("Invalid option " + name + ", " + USAGE);
+			}
+		});
+		Path source = Paths.get(arguments.get(1));
+		Path target = Paths.get(arguments.get(2));
+		generator.generate(source,target);
+		System.out.println("Generated " + generator.files + " files into " + source + ", " + generator.duplicates + " duplicates and "
+				+ generator.collisions + " name collisions in " + target + ".");
+	}
+
+}
@@ -0,0 +1,108 @@
+package cz.zalusky.orgmedia;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Conversion of source mixing layouts of all other conversions, e.g. backup drive containing camera day directories {@code YYYY_MM_DD}
+ * next to files copied from Samsung and Huawei/Xiaomi phones. Source is listed once and name of each child is matched once
+ * by {@link #COMBINED} pattern, whose matching alternative determines the layout and groups of date.
+ * @author Tomas Zalusky
+ */
+public class Mixed1Conversion extends Conversion {
+
+	private static final Layout CANON = new Layout(Canon1Conversion.DAY_DIRECTORY, true, 1);
+
+	private static final Layout SAMSUNG = new Layout(Samsung1Conversion.VALID_FILES, false, 1);
+
+	private static final Layout HUAWEI_XIAOMI = new Layout(HuaweiXiaomi1Conversion.VALID_FILES, false, 2);
+
+	private static final List<Layout> LAYOUTS = Arrays.asList(CANON, SAMSUNG, HUAWEI_XIAOMI);
+
+	/**
+	 * Alternation of patterns of all layouts, each enclosed in group whose index is {@link Layout#group}.
+	 */
+	static final Pattern COMBINED = combine(LAYOUTS);
+
+	private static final String INVALID_FILE_FORMAT = "%s %s is neither YYYY_MM_DD directory nor YYYYMMDD_HHMMSS.jpg or .mp4 nor matches /"
+			+ HuaweiXiaomi1Conversion.VALID_FILES.pattern() + "/, skipped";
+
+	@Override
+	void scan(Path source, Path target, TargetState state, List<Task> tasks) {
+		for (ListedFile sourceChild : listFiles(source, state)) {
+			Task task = Task.add(tasks);
+			Matcher m = classify(COMBINED, sourceChild, state);
+			Layout layout = m == null ? null : matched(m);
+			if (layout == null || layout.directory != sourceChild.isDirectory()) {
+				task.report.skipped(INVALID_FILE_FORMAT, sourceChild.isDirectory() ? "directory" : "file", sourceChild.path);
+				continue;
+			}
+			int year = layout.group + layout.firstDateGroup;
+			Path targetDayDirectory = targetDayDirectory(target, m.group(year), m.group(year + 1), m.group(year + 2), sourceChild.path, state, task);
+			if (targetDayDirectory == null) {
+				continue;
+			}
+			if (layout.directory) {
+				Canon1Conversion.scanDayDirectory(this, sourceChild, targetDayDirectory, state, tasks);
+			} else {
+				task.schedule(targetDayDirectory, t -> place(sourceChild, targetDayDirectory, state, t));
+			}
+		}
+	}
+
+	@Override
+	void cleanUp(Path source, Task task) {
+		task.deleteIfEmpty(source);
+	}
+
+	private static Layout matched(Matcher m) {
+		for (Layout layout : LAYOUTS) {
+			if (m.start(layout.group) != -1) {
+				return layout;
+			}
+		}
+		return null;
+	}
+
+	private static Pattern combine(List<Layout> layouts) {
+		StringBuilder result = new StringBuilder();
+		int group = 1;
+		for (Layout layout : layouts) {
+			if (result.length() > 0) {
+				result.append('|');
+			}
+			result.append('(').append(layout.pattern.pattern()).append(')');
+			layout.group = group;
+			group += 1 + layout.pattern.matcher("").groupCount();
+		}
+		return Pattern.compile(result.toString());
+	}
+
+	private static class Layout {
+
+		final Pattern pattern;
+
+		final boolean directory;
+
+		/**
+		 * Index of group of year within the pattern, followed by groups of month and day.
+		 */
+		final int firstDateGroup;
+
+		/**
+		 * Index of group enclosing the pattern within {@link Mixed1Conversion#COMBINED}.
+		 */
+		int group;
+
+		Layout(Pattern pattern, boolean directory, int firstDateGroup) {
+			this.pattern = pattern;
+			this.directory = directory;
+			this.firstDateGroup = firstDateGroup;
+		}
+
+	}
+
+}
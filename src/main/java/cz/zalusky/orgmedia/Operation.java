@@ -0,0 +1,56 @@
+package cz.zalusky.orgmedia;
+
+import java.nio.file.Path;
+
+import cz.zalusky.orgmedia.Report.Type;
+
+/**
+ * Single planned change of file system, performed when {@link Plan} is executed.
+ * The message is reported with the type on success of move or delete, it is reported as {@link Type#FAILED} otherwise.
+ * Message of {@link Kind#MKDIR} is reported only when the directory cannot be created.
+ * Outcome of {@link Kind#DELETE_IF_EMPTY} is known only during execution, it is reported as usual for source directories.
+ * @author Tomas Zalusky
+ */
+class Operation {
+
+	enum Kind {
+
+		MKDIR,
+
+		MOVE,
+
+		DELETE,
+
+		DELETE_IF_EMPTY
+
+	}
+
+	final Kind kind;
+
+	final Type type;
+
+	final Path file;
+
+	/**
+	 * Target of move, file with equal content which has to exist for delete of duplicate, {@code null} otherwise.
+	 */
+	final Path target;
+
+	final String format;
+
+	final Object[] args;
+
+	Operation(Kind kind, Type type, Path file, Path target, String format, Object... args) {
+		this.kind = kind;
+		this.type = type;
+		this.file = file;
+		this.target = target;
+		this.format = format;
+		this.args = args;
+	}
+
+	String getMessage() {
+		return format == null ? null : String.format(format,args);
+	}
+
+}
@@ -0,0 +1,222 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import cz.zalusky.orgmedia.Operation.Kind;
+import cz.zalusky.orgmedia.Report.Type;
+
+/**
+ * Result of planning phase of conversion: tasks with {@link Operation}s to be performed and problems found while planning.
+ * Nothing is changed in source nor target until the plan is executed by {@link Conversion#execute(Plan)}.
+ * <p>
+ * Plan can be written into text file, one line per task, problem or operation, and read back for later execution.
+ * Operations are executed in order of the file within target directory of task, messages are stored already formatted.
+ * @author Tomas Zalusky
+ */
+public class Plan {
+
+	private static final String HEADER = "orgmedia plan";
+
+	private static final String TASK = "TASK";
+
+	private static final String CLEAN_UP = "CLEANUP";
+
+	private static final String REPORT = "REPORT";
+
+	private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+	private static final Joiner TAB_JOINER = Joiner.on('\t');
+
+	private final List<Path> sources;
+
+	private final Path target;
+
+	final List<Task> tasks;
+
+	/**
+	 * Task performed after all other tasks have been performed.
+	 */
+	final Task cleanUp;
+
+	/**
+	 * Metrics of the run which made the plan, continued by its execution.
+	 */
+	final RunMetrics metrics;
+
+	/**
+	 * Progress of the run which made the plan, {@code null} for plan read from file.
+	 */
+	final Progress progress;
+
+	Plan(List<Path> sources, Path target, List<Task> tasks, Task cleanUp, RunMetrics metrics, Progress progress) {
+		this.sources = sources;
+		this.target = target;
+		this.tasks = tasks;
+		this.cleanUp = cleanUp;
+		this.metrics = metrics;
+		this.progress = progress;
+	}
+
+	/**
+	 * @return first source, the only one unless the plan converts several sources into the same target
+	 */
+	public Path getSource() {
+		return sources.get(0);
+	}
+
+	public List<Path> getSources() {
+		return sources;
+	}
+
+	public Path getTarget() {
+		return target;
+	}
+
+	/**
+	 * Counts of planned operations, suitable as preview of conversion.
+	 */
+	public String getSummary() {
+		long[] counts = new long[Type.values().length];
+		long mkdirs = 0;
+		for (Task task : allTasks()) {
+			counts[Type.SKIPPED.ordinal()] += task.report.getCount(Type.SKIPPED);
+			for (Operation operation : task.getOperations()) {
+				if (operation.kind == Kind.MKDIR) {
+					mkdirs++;
+				} else if (operation.type != null) {
+					counts[operation.type.ordinal()]++;
+				}
+			}
+		}
+		return String.format("%d directories to create, %d to move, %d to rename, %d to delete as duplicates, %d to delete, %d skipped",
+				mkdirs,counts[Type.MOVED.ordinal()],counts[Type.RENAMED.ordinal()],counts[Type.DUPLICATE_DELETED.ordinal()],counts[Type.DELETED.ordinal()],counts[Type.SKIPPED.ordinal()]);
+	}
+
+	public void write(Path file) {
+		try (Writer writer = Files.newBufferedWriter(file,Charsets.UTF_8)) {
+			List<String> header = new ArrayList<>(Arrays.asList(HEADER,path(getSource()),path(target)));
+			sources.subList(1,sources.size()).forEach(s -> header.add(path(s))); // further sources after target, for compatibility
+			writeLine(writer,header.toArray(new String[header.size()]));
+			for (Task task : allTasks()) {
+				writeLine(writer,task == cleanUp ? CLEAN_UP : TASK,path(task.getTargetDirectory()));
+				task.report.forEach((type,message) -> writeLine(writer,REPORT,type.name(),message));
+				for (Operation operation : task.getOperations()) {
+					writeLine(writer,operation.kind.name(),operation.type == null ? "" : operation.type.name(),
+							path(operation.file),path(operation.target),Strings.nullToEmpty(operation.getMessage()));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Paths of the plan are resolved in file system of the plan file.
+	 */
+	public static Plan read(Path file) {
+		try {
+			return read(file,Files.readAllLines(file,Charsets.UTF_8));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param lines lines of plan read from given file
+	 */
+	static Plan read(Path file, List<String> lines) {
+		if (lines.isEmpty()) {
+			throw new IllegalArgumentException("Path " + file + " is not a plan");
+		}
+		List<String> header = fields(lines.get(0));
+		if (header.size() < 3 || !HEADER.equals(header.get(0))) {
+			throw new IllegalArgumentException("Path " + file + " is not a plan");
+		}
+		List<Task> tasks = new ArrayList<>();
+		Task task = null;
+		Task cleanUp = null;
+		for (String line : lines.subList(1,lines.size())) {
+			List<String> fields = fields(line);
+			switch (fields.get(0)) {
+				case TASK:
+					task = Task.add(tasks);
+					task.setTargetDirectory(file(file.getFileSystem(),fields.get(1)));
+					break;
+				case CLEAN_UP:
+					task = cleanUp = new Task();
+					break;
+				case REPORT:
+					task.report.add(Type.valueOf(fields.get(1)),"%s",fields.get(2));
+					break;
+				default:
+					String message = fields.get(4);
+					task.add(new Operation(Kind.valueOf(fields.get(0)),fields.get(1).isEmpty() ? null : Type.valueOf(fields.get(1)),
+							file(file.getFileSystem(),fields.get(2)),file(file.getFileSystem(),fields.get(3)),message.isEmpty() ? null : "%s",message));
+			}
+		}
+		List<Path> sources = new ArrayList<>();
+		sources.add(file(file.getFileSystem(),header.get(1)));
+		header.subList(3,header.size()).forEach(s -> sources.add(file(file.getFileSystem(),s)));
+		return new Plan(sources,file(file.getFileSystem(),header.get(2)),tasks,cleanUp == null ? new Task() : cleanUp,new RunMetrics(),null);
+	}
+
+	private List<Task> allTasks() {
+		List<Task> result = new ArrayList<>(tasks);
+		result.add(cleanUp);
+		return Collections.unmodifiableList(result);
+	}
+
+	private static void writeLine(Writer writer, String... fields) {
+		List<String> escaped = new ArrayList<>();
+		for (String field : fields) {
+			escaped.add(field.replace("\\","\\\\").replace("\t","\\t").replace("\r","\\r").replace("\n","\\n"));
+		}
+		try {
+			writer.write(TAB_JOINER.join(escaped));
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static List<String> fields(String line) {
+		List<String> result = new ArrayList<>();
+		for (String field : TAB_SPLITTER.split(line)) {
+			StringBuilder unescaped = new StringBuilder();
+			for (int i = 0; i < field.length(); i++) {
+				char c = field.charAt(i);
+				if (c == '\\' && i + 1 < field.length()) {
+					char next = field.charAt(++i);
+					unescaped.append(next == 't' ? '\t' : next == 'r' ? '\r' : next == 'n' ? '\n' : next);
+				} else {
+					unescaped.append(c);
+				}
+			}
+			result.add(unescaped.toString());
+		}
+		return result;
+	}
+
+	private static String path(Path file) {
+		return file == null ? "" : file.toString();
+	}
+
+	private static Path file(FileSystem fileSystem, String path) {
+		return path.isEmpty() ? null : fileSystem.getPath(path);
+	}
+
+}
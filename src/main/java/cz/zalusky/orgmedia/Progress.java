@@ -0,0 +1,175 @@
+package cz.zalusky.orgmedia;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Tomas Zalusky
+ */
+class Progress implements ProgressMXBean {
+
+	enum Phase {
+
+		SCAN,
+
+		PLAN,
+
+		EXECUTE,
+
+		DONE
+
+	}
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final String conversion;
+
+	private final Path source;
+
+	private final Path target;
+
+	private final RunMetrics metrics;
+
+	private volatile Phase phase = Phase.SCAN;
+
+	private volatile long phaseStarted = System.nanoTime();
+
+	private volatile long total;
+
+	private final LongAdder processed = new LongAdder();
+
+	private volatile long bytesMovedBeforePhase;
+
+	private volatile Path currentDirectory;
+
+	private ObjectName name;
+
+	Progress(String conversion, Path source, Path target, RunMetrics metrics) {
+		this.conversion = conversion;
+		this.source = source;
+		this.target = target;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Registers the bean unless it is registered already. Registration problems, e.g. concurrent run with the same source, are ignored.
+	 */
+	synchronized void register() {
+		if (name != null) {
+			return;
+		}
+		try {
+			ObjectName objectName = new ObjectName("cz.zalusky.orgmedia:type=Progress,source=" + ObjectName.quote(source.toAbsolutePath().toString()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,objectName);
+			name = objectName;
+		} catch (JMException e) {
+			// progress is not published
+		}
+	}
+
+	synchronized void unregister() {
+		if (name == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(name);
+		} catch (JMException e) {
+			// already unregistered
+		}
+		name = null;
+	}
+
+	void start(Phase phase, long total) {
+		this.total = total;
+		this.processed.reset();
+		this.bytesMovedBeforePhase = metrics.getBytesMoved();
+		this.phaseStarted = System.nanoTime();
+		this.phase = phase;
+	}
+
+	void started(Task task) {
+		if (task.getTargetDirectory() != null) {
+			currentDirectory = task.getTargetDirectory();
+		}
+	}
+
+	void completed() {
+		processed.increment();
+	}
+
+	@Override
+	public String getConversion() {
+		return conversion;
+	}
+
+	@Override
+	public String getSource() {
+		return source.toString();
+	}
+
+	@Override
+	public String getTarget() {
+		return target.toString();
+	}
+
+	@Override
+	public String getPhase() {
+		return phase.name();
+	}
+
+	@Override
+	public long getTotal() {
+		return total;
+	}
+
+	@Override
+	public long getProcessed() {
+		return processed.sum();
+	}
+
+	@Override
+	public long getRemaining() {
+		return Math.max(total - getProcessed(),0);
+	}
+
+	@Override
+	public String getCurrentDirectory() {
+		Path result = currentDirectory;
+		return result == null ? null : result.toString();
+	}
+
+	@Override
+	public double getFilesPerSecond() {
+		return getProcessed() * NANOS_PER_SECOND / phaseNanos();
+	}
+
+	@Override
+	public double getBytesPerSecond() {
+		return (metrics.getBytesMoved() - bytesMovedBeforePhase) * NANOS_PER_SECOND / phaseNanos();
+	}
+
+	@Override
+	public long getEtaSeconds() {
+		long processedSoFar = getProcessed();
+		if (processedSoFar == 0 || phase == Phase.SCAN) {
+			return phase == Phase.DONE ? 0 : -1;
+		}
+		return Math.round(getRemaining() * (phaseNanos() / NANOS_PER_SECOND) / processedSoFar);
+	}
+
+	@Override
+	public String getMetrics() {
+		return metrics.toString();
+	}
+
+	private long phaseNanos() {
+		return Math.max(System.nanoTime() - phaseStarted,1);
+	}
+
+}
@@ -0,0 +1,47 @@
+package cz.zalusky.orgmedia;
+
+/**
+ * Live progress of conversion run, registered in platform MBean server as {@code cz.zalusky.orgmedia:type=Progress,source="<source>"}
+ * while the run is planned and executed, so that long imports can be watched e.g. by jconsole.
+ * Processed and remaining counts are counts of tasks of the current phase, task mostly corresponds to single source file.
+ * @author Tomas Zalusky
+ */
+public interface ProgressMXBean {
+
+	String getConversion();
+
+	String getSource();
+
+	String getTarget();
+
+	/**
+	 * {@code SCAN}, {@code PLAN}, {@code EXECUTE} or {@code DONE}.
+	 */
+	String getPhase();
+
+	long getTotal();
+
+	long getProcessed();
+
+	long getRemaining();
+
+	/**
+	 * Target directory of the most recently started task.
+	 */
+	String getCurrentDirectory();
+
+	double getFilesPerSecond();
+
+	double getBytesPerSecond();
+
+	/**
+	 * Estimated seconds until the end of current phase, {@code -1} when not known yet.
+	 */
+	long getEtaSeconds();
+
+	/**
+	 * Summary of {@link RunMetrics} of the run so far.
+	 */
+	String getMetrics();
+
+}
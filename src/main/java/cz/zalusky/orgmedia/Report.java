@@ -1,43 +1,298 @@
 package cz.zalusky.orgmedia;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.Charset;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
-import com.google.common.io.Files;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 
+/**
+ * Report of conversion. Entries are kept in memory (see {@link #getContent()}) and/or streamed into log file
+ * as soon as they are reported (see {@link #openLogFile(Path, Path, Path)}).
+ * Entries keep format and arguments and are formatted only when written or requested,
+ * counters of entry types are maintained as entries are reported.
+ */
 public class Report {
 	
 	private static final String LS = String.format("%n");
 
-	private final List<String> content = new ArrayList<>();
+	public enum Type {
+
+		MOVED(true),
+
+		RENAMED(true),
+
+		DUPLICATE_DELETED(true),
+
+		DELETED(true),
+
+		OK(true),
+
+		SKIPPED(false),
+
+		FAILED(false),
+
+		ERROR(false);
+
+		private final String prefix;
+
+		Type(boolean ok) {
+			this.prefix = ok ? "OK   : " : "ERROR: ";
+		}
+
+	}
+
+	private static class Entry {
+
+		final Type type;
+
+		final String format;
+
+		final Object[] args;
+
+		Entry(Type type, String format, Object[] args) {
+			this.type = type;
+			this.format = format;
+			this.args = args;
+		}
+
+		String message() {
+			return String.format(format,args);
+		}
+
+		@Override
+		public String toString() {
+			try (Formatter result = new Formatter(new StringBuilder(type.prefix))) {
+				return result.format(format,args).toString();
+			}
+		}
+
+	}
+
+	/**
+	 * {@code null} when content is not kept in memory.
+	 */
+	private final List<Entry> content;
+
+	private final AtomicLongArray counts = new AtomicLongArray(Type.values().length);
+
+	private final AtomicLong bytesMoved = new AtomicLong();
+
+	private Writer log;
+
+	private boolean logEmpty;
+
+	private DedupStatistics dedupStatistics;
+
+	private RunMetrics metrics;
+
+	public Report() {
+		this(true);
+	}
+
+	public Report(boolean keepContent) {
+		this.content = keepContent ? new ArrayList<>() : null;
+	}
 
 	public void ok(String format, Object... args) {
-		content.add(String.format("OK   : " + format,args));
+		add(Type.OK,format,args);
 	}
 	
 	public void error(String format, Object... args) {
-		content.add(String.format("ERROR: " + format,args));
+		add(Type.ERROR,format,args);
 	}
 	
+	public void skipped(String format, Object... args) {
+		add(Type.SKIPPED,format,args);
+	}
+
+	public void add(Type type, String format, Object... args) {
+		add(new Entry(type,format,args));
+	}
+
+	void addBytesMoved(long bytes) {
+		bytesMoved.addAndGet(bytes);
+	}
+
+	void append(Report other) {
+		other.content.forEach(this::add);
+		bytesMoved.addAndGet(other.bytesMoved.get());
+	}
+
+	/**
+	 * Passes type and formatted message of each entry kept in memory.
+	 */
+	void forEach(BiConsumer<Type,String> consumer) {
+		content.forEach(entry -> consumer.accept(entry.type,entry.message()));
+	}
+
+	void clear() {
+		content.clear();
+	}
+
+	private void add(Entry entry) {
+		counts.incrementAndGet(entry.type.ordinal());
+		if (content != null) {
+			content.add(entry);
+		}
+		if (log != null) {
+			long start = RunMetrics.start();
+			try {
+				if (!logEmpty) {
+					log.write(LS);
+				}
+				log.write(entry.toString());
+				logEmpty = false;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (metrics != null) {
+				metrics.stop(RunMetrics.Phase.LOG_WRITE,start);
+			}
+		}
+	}
+
+	/**
+	 * @return lines of report, formatted when accessed
+	 * @throws IllegalStateException when report does not keep content in memory
+	 */
 	public List<String> getContent() {
-		return content;
+		if (content == null) {
+			throw new IllegalStateException("Report content is not kept in memory");
+		}
+		return Lists.transform(content,Entry::toString);
+	}
+
+	public long getCount(Type type) {
+		return counts.get(type.ordinal());
+	}
+
+	public long getBytesMoved() {
+		return bytesMoved.get();
+	}
+
+	/**
+	 * Summary of counters, available at any time without going through the content.
+	 */
+	public String getSummary() {
+		return String.format("%d moved, %d renamed, %d deleted as duplicates, %d skipped, %d failed, %d bytes moved",
+				getCount(Type.MOVED),getCount(Type.RENAMED),getCount(Type.DUPLICATE_DELETED),getCount(Type.SKIPPED),getCount(Type.FAILED),getBytesMoved());
+	}
+
+	public DedupStatistics getDedupStatistics() {
+		return dedupStatistics;
+	}
+
+	void setDedupStatistics(DedupStatistics dedupStatistics) {
+		this.dedupStatistics = dedupStatistics;
+	}
+
+	/**
+	 * @return metrics of the run or {@code null} for report which is not a result of conversion
+	 */
+	public RunMetrics getMetrics() {
+		return metrics;
+	}
+
+	void setMetrics(RunMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Starts streaming of all subsequently reported lines into buffered log file.
+	 * @return log file actually opened, see {@link #openLogFile(Path, List, Path)}
+	 */
+	public Path openLogFile(Path logFile, Path source, Path target) {
+		return openLogFile(logFile,Collections.singletonList(source),target);
 	}
 
-	public void writeContentToLogFile(File logFile, File source, File target) {
+	/**
+	 * Starts streaming of all subsequently reported lines of conversion of several sources into buffered log file.
+	 * Existing file is never overwritten, when given file exists (e.g. log of other run into the same target started in the same second),
+	 * new file with numeric suffix is created next to it.
+	 * @return log file actually opened
+	 */
+	public Path openLogFile(Path logFile, List<Path> sources, Path target) {
+		try {
+			Path result = logFile;
+			for (int i = 2; ; i++) {
+				try {
+					log = Files.newBufferedWriter(result,Charset.defaultCharset(),StandardOpenOption.CREATE_NEW,StandardOpenOption.WRITE);
+					break;
+				} catch (FileAlreadyExistsException e) {
+					String name = logFile.getFileName().toString();
+					int dot = name.lastIndexOf('.');
+					result = logFile.resolveSibling(dot == -1 ? name + "-" + i : name.substring(0,dot) + "-" + i + name.substring(dot));
+				}
+			}
+			log.write("Converted " + Joiner.on(", ").join(sources) + " to " + target + ":" + LS);
+			logEmpty = true;
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes lines reported so far into log file, so that they are not lost when the run is interrupted.
+	 */
+	void flushLogFile() {
+		if (log == null) {
+			return;
+		}
+		try {
+			log.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes summary into log file opened by {@link #openLogFile(Path, Path, Path)} and closes it.
+	 */
+	public void closeLogFile() {
+		if (log == null) {
+			return;
+		}
+		try {
+			log.write(footer());
+			log.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			log = null;
+		}
+	}
+
+	public void writeContentToLogFile(Path logFile, Path source, Path target) {
 		String contentAsString = "Converted " + source + " to " + target + ":" + LS
-				+ content.stream().collect(Collectors.joining(LS));
+				+ getContent().stream().collect(Collectors.joining(LS))
+				+ footer();
 		try {
-			Files.write(contentAsString,logFile,Charset.defaultCharset());
+			Files.write(logFile,contentAsString.getBytes(Charset.defaultCharset()));
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
 
+	private String footer() {
+		return LS + "Summary: " + getSummary()
+				+ (dedupStatistics == null ? "" : LS + "Duplicate detection: " + dedupStatistics)
+				+ (metrics == null ? "" : LS + "Metrics: " + metrics);
+	}
+
 }
@@ -0,0 +1,31 @@
+package cz.zalusky.orgmedia;
+
+import java.util.List;
+
+/**
+ * Appends reports of tasks into report of the run in order of creation of tasks, as soon as all preceding tasks are completed.
+ * Report of completed task is thus not kept in memory until the end of the run.
+ * @author Tomas Zalusky
+ */
+class ReportMerger {
+
+	private final List<Task> tasks;
+
+	private final Report report;
+
+	private int next;
+
+	ReportMerger(List<Task> tasks, Report report) {
+		this.tasks = tasks;
+		this.report = report;
+	}
+
+	synchronized void completed() {
+		while (next < tasks.size() && tasks.get(next).isDone()) {
+			Task task = tasks.get(next++);
+			report.append(task.report);
+			task.report.clear();
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package cz.zalusky.orgmedia;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of single conversion run, available from {@link Report#getMetrics()}.
+ * Phase times are summed over all threads, so with several workers they may exceed the wall time of the run.
+ * @author Tomas Zalusky
+ */
+public class RunMetrics {
+
+	public enum Phase {
+
+		/**
+		 * Listing of source and checks of target directories, including classification.
+		 */
+		SCAN("scan"),
+
+		/**
+		 * Matching of names against patterns of conversion.
+		 */
+		CLASSIFY("classify"),
+
+		/**
+		 * Search of files with equal content in target.
+		 */
+		DEDUP("dedup"),
+
+		/**
+		 * Moves into target including creation of target directories.
+		 */
+		MOVE("move"),
+
+		/**
+		 * Deletes of files and directories.
+		 */
+		DELETE("delete"),
+
+		/**
+		 * Streaming of report into log file.
+		 */
+		LOG_WRITE("log write");
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+	}
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private static final double BYTES_PER_MB = 1 << 20;
+
+	private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+
+	final LongAdder listings = new LongAdder();
+
+	final LongAdder stats = new LongAdder();
+
+	final LongAdder bytesRead = new LongAdder();
+
+	final LongAdder bytesMoved = new LongAdder();
+
+	final LongAdder bytesCopied = new LongAdder();
+
+	final LongAdder filesProcessed = new LongAdder();
+
+	final LongAdder journalSyncs = new LongAdder();
+
+	private final long started = System.nanoTime();
+
+	private volatile long finished;
+
+	public RunMetrics() {
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @return start of measured section, to be passed into {@link #stop(Phase, long)}
+	 */
+	static long start() {
+		return System.nanoTime();
+	}
+
+	void stop(Phase phase, long start) {
+		phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+	}
+
+	void finish() {
+		finished = System.nanoTime();
+	}
+
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()].sum();
+	}
+
+	/**
+	 * Wall time since the start of the run until its end, or until now while the run is in progress.
+	 */
+	public long getWallNanos() {
+		return (finished == 0 ? System.nanoTime() : finished) - started;
+	}
+
+	/**
+	 * Number of directory listings.
+	 */
+	public long getListings() {
+		return listings.sum();
+	}
+
+	/**
+	 * Number of queries of file attributes (existence, type, size, modification time).
+	 */
+	public long getStats() {
+		return stats.sum();
+	}
+
+	/**
+	 * Bytes read to compute samples and hashes and to compare content.
+	 */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getBytesMoved() {
+		return bytesMoved.sum();
+	}
+
+	/**
+	 * Bytes of files moved by copy to other file store, included in bytes moved.
+	 */
+	public long getBytesCopied() {
+		return bytesCopied.sum();
+	}
+
+	/**
+	 * Number of successful moves and deletes.
+	 */
+	public long getFilesProcessed() {
+		return filesProcessed.sum();
+	}
+
+	/**
+	 * Number of syncs of journal to the device.
+	 */
+	public long getJournalSyncs() {
+		return journalSyncs.sum();
+	}
+
+	public double getFilesPerSecond() {
+		return getFilesProcessed() * NANOS_PER_SECOND / Math.max(getWallNanos(),1);
+	}
+
+	public double getMegabytesPerSecond() {
+		return getBytesMoved() / BYTES_PER_MB * NANOS_PER_SECOND / Math.max(getWallNanos(),1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			result.append(String.format(Locale.ROOT,"%s %.3f s, ",phase.label,getNanos(phase) / NANOS_PER_SECOND));
+		}
+		result.append(String.format(Locale.ROOT,"%d listings, %d stats, %.1f MB read, %.1f MB moved (%.1f MB copied), %d journal syncs, %d files in %.3f s, %.1f files/s, %.1f MB/s",
+				getListings(),getStats(),getBytesRead() / BYTES_PER_MB,getBytesMoved() / BYTES_PER_MB,getBytesCopied() / BYTES_PER_MB,getJournalSyncs(),
+				getFilesProcessed(),getWallNanos() / NANOS_PER_SECOND,getFilesPerSecond(),getMegabytesPerSecond()));
+		return result.toString();
+	}
+
+}
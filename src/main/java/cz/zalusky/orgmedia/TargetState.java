@@ -0,0 +1,108 @@
+package cz.zalusky.orgmedia;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * State of target directories cached for single run: which directories exist or are planned to be created,
+ * names of their children and content fingerprints of files (kept by {@link ContentIndex}).
+ * Each directory is checked and listed at most once per run, the state is updated as files are planned to be moved in,
+ * content of such files is read from their source until the plan is executed.
+ * @author Tomas Zalusky
+ */
+class TargetState {
+
+	enum DirectoryStatus {
+
+		EXISTING,
+
+		MISSING,
+
+		NOT_DIRECTORY
+
+	}
+
+	private final ContentIndex index;
+
+	private final RunMetrics metrics;
+
+	private final ConcurrentMap<Path,DirectoryStatus> directories = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Path,DirectoryNames> names = new ConcurrentHashMap<>();
+
+	private final Set<Path> plannedDirectories = ConcurrentHashMap.newKeySet();
+
+	private final ConcurrentMap<Path,Path> plannedFiles = new ConcurrentHashMap<>();
+
+	TargetState(ContentIndex index, RunMetrics metrics) {
+		this.index = index;
+		this.metrics = metrics;
+	}
+
+	ContentIndex getIndex() {
+		return index;
+	}
+
+	RunMetrics getMetrics() {
+		return metrics;
+	}
+
+	DirectoryStatus directory(Path dir) {
+		return directories.computeIfAbsent(dir,d -> {
+			metrics.stats.increment();
+			try {
+				return Files.readAttributes(d,BasicFileAttributes.class).isDirectory() ? DirectoryStatus.EXISTING : DirectoryStatus.NOT_DIRECTORY;
+			} catch (NoSuchFileException e) {
+				return DirectoryStatus.MISSING;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * @return {@code true} when the directory is missing and its creation has not been planned yet
+	 */
+	boolean planMkdir(Path dir) {
+		return directory(dir) == DirectoryStatus.MISSING && plannedDirectories.add(dir);
+	}
+
+	/**
+	 * Names of all children of given directory, the same listing is used for reconciliation of {@link ContentIndex}.
+	 */
+	DirectoryNames names(Path dir) {
+		return names.computeIfAbsent(dir,d -> {
+			DirectoryNames result = new DirectoryNames();
+			List<ListedFile> children = directory(d) == DirectoryStatus.MISSING ? Collections.emptyList() : ListedFile.list(d,metrics);
+			children.forEach(child -> result.add(child.getName()));
+			index.reconcile(d,children);
+			return result;
+		});
+	}
+
+	void plannedMove(Path source, Path target) {
+		DirectoryNames targetNames = names.get(target.getParent());
+		if (targetNames != null) {
+			targetNames.add(target.getFileName().toString());
+		}
+		plannedFiles.put(target,source);
+		index.plannedMove(source,target);
+	}
+
+	/**
+	 * @return file whose content is going to be at given location when the plan is executed
+	 */
+	Path contentOf(Path file) {
+		return plannedFiles.getOrDefault(file,file);
+	}
+
+}
@@ -0,0 +1,107 @@
+package cz.zalusky.orgmedia;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import cz.zalusky.orgmedia.Operation.Kind;
+import cz.zalusky.orgmedia.Report.Type;
+
+/**
+ * Unit of work of conversion, usually processing of single source file.
+ * Problems found while scanning are reported immediately into task's own report,
+ * the planning which needs to inspect target is scheduled into target directory and produces {@link Operation}s,
+ * which are performed later when the {@link Plan} is executed.
+ * Tasks of the same target directory are always planned and performed by single worker in order of creation,
+ * reports of all tasks are merged in order of creation regardless of the order of completion.
+ * @author Tomas Zalusky
+ */
+class Task {
+
+	final Report report = new Report();
+
+	private Path targetDirectory;
+
+	private Consumer<Task> planner;
+
+	private final List<Operation> operations = new ArrayList<>();
+
+	private volatile boolean done;
+
+	static Task add(List<Task> tasks) {
+		Task result = new Task();
+		tasks.add(result);
+		return result;
+	}
+
+	void schedule(Path targetDirectory, Consumer<Task> planner) {
+		this.targetDirectory = targetDirectory;
+		this.planner = planner;
+	}
+
+	/**
+	 * @return target directory or {@code null} when there is nothing to plan or perform
+	 */
+	Path getTargetDirectory() {
+		return targetDirectory;
+	}
+
+	void setTargetDirectory(Path targetDirectory) {
+		this.targetDirectory = targetDirectory;
+	}
+
+	void plan() {
+		if (planner != null) {
+			planner.accept(this);
+			planner = null;
+		}
+	}
+
+	/**
+	 * Plans creation of directory, including missing parents. The task is performed in given directory unless it has been scheduled elsewhere.
+	 */
+	void mkdir(Path dir, String failureFormat, Object... args) {
+		if (targetDirectory == null) {
+			targetDirectory = dir;
+		}
+		add(new Operation(Kind.MKDIR,Type.SKIPPED,dir,null,failureFormat,args));
+	}
+
+	void move(Type type, Path source, Path target, String format, Object... args) {
+		add(new Operation(Kind.MOVE,type,source,target,format,args));
+	}
+
+	void delete(Type type, Path file, String format, Object... args) {
+		delete(type,file,null,format,args);
+	}
+
+	/**
+	 * Plans delete of duplicate, which is performed only if file with equal content exists at the time of execution.
+	 */
+	void delete(Type type, Path file, Path keeper, String format, Object... args) {
+		add(new Operation(Kind.DELETE,type,file,keeper,format,args));
+	}
+
+	void deleteIfEmpty(Path dir) {
+		add(new Operation(Kind.DELETE_IF_EMPTY,null,dir,null,null));
+	}
+
+	void add(Operation operation) {
+		operations.add(operation);
+	}
+
+	List<Operation> getOperations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	void done() {
+		done = true;
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+}
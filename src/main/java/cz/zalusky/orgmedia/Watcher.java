@@ -0,0 +1,259 @@
+package cz.zalusky.orgmedia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Daemon mode of conversion: watches source directory (e.g. folder synchronized from phone) and converts files as they arrive,
+ * in single JVM with the same {@link Conversion} and without rescanning source and target on schedule.
+ * <p>
+ * File is considered complete when neither event came for it nor its size and modification time changed during quiet period,
+ * so that files written in several chunks are not converted partially. Files arriving in burst are converted in one batch
+ * when the whole burst is complete, or when the oldest complete file has waited for maximal batch delay.
+ * Files not complete yet are left out of the batch by {@link Conversion#setSourceFilter(java.util.function.Predicate)},
+ * the watched directory itself is never deleted. Both settings are applied to {@link Conversion#copy() copy} of given conversion,
+ * which therefore remains usable by others. Content index of the target is kept in memory between batches by {@link IndexCache}.
+ * <p>
+ * Files present when watching starts are converted as the first batch. When events are lost by overflow, the source is rescanned.
+ * @author Tomas Zalusky
+ */
+public class Watcher implements Closeable {
+
+	private final Conversion conversion;
+
+	private final Path source;
+
+	private final Path target;
+
+	private final WatchService watchService;
+
+	private final Map<WatchKey,Path> directories = new HashMap<>();
+
+	private final Map<Path,Arrival> arrivals = new HashMap<>();
+
+	private long quietMillis = 2000;
+
+	private long maxBatchDelayMillis = 60000;
+
+	private volatile boolean closed;
+
+	private int batches;
+
+	public Watcher(Conversion conversion, Path source, Path target) {
+		this.conversion = conversion.copy();
+		this.conversion.setDeleteEmptySource(false);
+		if (this.conversion.getIndexCache() == null) {
+			this.conversion.setIndexCache(new IndexCache());
+		}
+		this.source = source;
+		this.target = target;
+		try {
+			this.watchService = source.getFileSystem().newWatchService();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Time without change after which file is considered complete.
+	 */
+	public void setQuietMillis(long quietMillis) {
+		Preconditions.checkArgument(quietMillis > 0,"Invalid quiet period %s",quietMillis);
+		this.quietMillis = quietMillis;
+	}
+
+	/**
+	 * Maximal time complete file waits for other files of the same burst.
+	 */
+	public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+		Preconditions.checkArgument(maxBatchDelayMillis >= 0,"Invalid batch delay %s",maxBatchDelayMillis);
+		this.maxBatchDelayMillis = maxBatchDelayMillis;
+	}
+
+	/**
+	 * Number of conversions performed so far.
+	 */
+	public synchronized int getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Watches source and converts arriving files until closed from other thread or interrupted.
+	 */
+	public void run() {
+		register(source);
+		try {
+			while (!closed) {
+				WatchKey key = watchService.poll(Math.max(1,quietMillis / 4),TimeUnit.MILLISECONDS);
+				long now = System.currentTimeMillis();
+				for (; key != null; key = watchService.poll()) {
+					handle(key,now);
+				}
+				Set<Path> batch = completeBatch(now);
+				if (batch != null) {
+					convert(batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// closed meanwhile
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Registers directory and its subdirectories, files found in them are considered arriving.
+	 */
+	private void register(Path dir) {
+		long now = System.currentTimeMillis();
+		try {
+			Files.walkFileTree(dir,new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attributes) throws IOException {
+					directories.put(d.register(watchService,StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_MODIFY),d); // same key when registered again
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (attributes.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+						arrived(file,now);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					return FileVisitResult.CONTINUE; // deleted meanwhile
+				}
+
+			});
+		} catch (NoSuchFileException e) {
+			// deleted meanwhile
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void handle(WatchKey key, long now) {
+		Path dir = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				register(source);
+			} else if (dir != null) {
+				Path child = dir.resolve((Path)event.context());
+				if (Files.isDirectory(child)) {
+					if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+						register(child);
+					}
+				} else if (!child.getFileName().toString().startsWith(".")) {
+					arrived(child,now);
+				}
+			}
+		}
+		if (!key.reset()) {
+			directories.remove(key); // directory deleted
+		}
+	}
+
+	private void arrived(Path file, long now) {
+		Arrival arrival = arrivals.computeIfAbsent(file,f -> new Arrival(now));
+		arrival.changed = now;
+	}
+
+	/**
+	 * Checks arriving files and returns batch of complete files when it should be converted.
+	 * @return {@code null} when no batch should be converted yet
+	 */
+	private Set<Path> completeBatch(long now) {
+		Set<Path> complete = new HashSet<>();
+		long oldestComplete = Long.MAX_VALUE;
+		boolean incomplete = false;
+		for (Iterator<Map.Entry<Path,Arrival>> i = arrivals.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Path,Arrival> entry = i.next();
+			Arrival arrival = entry.getValue();
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(entry.getKey(),BasicFileAttributes.class);
+			} catch (IOException e) {
+				i.remove(); // deleted or moved away
+				continue;
+			}
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			if (attributes.size() != arrival.size || lastModified != arrival.lastModified) {
+				arrival.size = attributes.size();
+				arrival.lastModified = lastModified;
+				arrival.changed = now;
+			}
+			if (now - arrival.changed >= quietMillis) {
+				complete.add(entry.getKey());
+				oldestComplete = Math.min(oldestComplete,arrival.changed + quietMillis);
+			} else {
+				incomplete = true;
+			}
+		}
+		if (complete.isEmpty() || incomplete && now - oldestComplete < maxBatchDelayMillis) {
+			return null;
+		}
+		return complete;
+	}
+
+	private void convert(Set<Path> batch) {
+		conversion.setSourceFilter(batch::contains);
+		try {
+			conversion.execute(source,target);
+		} finally {
+			conversion.setSourceFilter(null);
+		}
+		arrivals.keySet().removeAll(batch);
+		synchronized (this) {
+			batches++;
+		}
+	}
+
+	private static class Arrival {
+
+		long changed;
+
+		long size = -1;
+
+		long lastModified = -1;
+
+		Arrival(long changed) {
+			this.changed = changed;
+		}
+
+	}
+
+}
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
@@ -170,6 +171,42 @@ public class Canon1ConversionTest {
 		assertExists("$TARGET$\\201501\\20150101\\MVI_0575.AVI","ghi");
 	}
 
+	@Test
+	public void reportStreamedIntoLogFile() throws IOException {
+		conversion.setKeepReportContent(false);
+		prepareSource("2015_12_10/","2015_12_10/IMG_1234.JPG~abc");
+		performConversion();
+		File[] logFiles = target.getRoot().listFiles((dir,name) -> name.endsWith(".log"));
+		assertEquals(1, logFiles.length);
+		List<String> lines = Files.readLines(logFiles[0], Charset.defaultCharset());
+		assertEquals("Converted " + source.getRoot() + " to " + target.getRoot() + ":", lines.get(0));
+		assertEquals(("OK   : file $SOURCE$\\2015_12_10\\IMG_1234.JPG moved into $TARGET$\\201512\\20151210\\IMG_1234.JPG")
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath()).replace("$TARGET$",target.getRoot().getAbsolutePath()), lines.get(1));
+		assertEquals(("OK   : there was no file remaining in directory $SOURCE$\\2015_12_10")
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath()), lines.get(2));
+		assertEquals("Summary: 1 moved, 0 renamed, 0 deleted as duplicates, 0 skipped, 0 failed, 3 bytes moved", lines.get(3));
+		assertTrue(lines.get(4), lines.get(4).startsWith("Duplicate detection: "));
+		assertTrue(lines.get(5), lines.get(5).startsWith("Metrics: scan "));
+	}
+
+	@Test
+	public void logFileOfPreviousRunNotOverwritten() throws IOException {
+		conversion = new Canon1Conversion() {
+			@Override
+			String getLogFileName() {
+				return "Canon1Conversion-20151210-120000.log"; // runs started in the same second
+			}
+		};
+		prepareSource("2015_12_10/","2015_12_10/IMG_1234.JPG~abc");
+		performConversion();
+		prepareSource("2015_12_11/","2015_12_11/IMG_1235.JPG~def");
+		performConversion();
+		List<String> first = Files.readLines(new File(target.getRoot(),"Canon1Conversion-20151210-120000.log"), Charset.defaultCharset());
+		List<String> second = Files.readLines(new File(target.getRoot(),"Canon1Conversion-20151210-120000-2.log"), Charset.defaultCharset());
+		assertTrue(first.get(1), first.get(1).contains("IMG_1234.JPG"));
+		assertTrue(second.get(1), second.get(1).contains("IMG_1235.JPG"));
+	}
+
 	private void prepareSource(String... fileNames) {
 		prepare(source, fileNames);
 	}
@@ -212,7 +249,7 @@ public class Canon1ConversionTest {
 	}
 
 	private void performConversion() {
-		this.report = conversion.execute(source.getRoot(), target.getRoot());
+		this.report = conversion.execute(source.getRoot().toPath(), target.getRoot().toPath());
 	}
 
 	private void verifyTarget(String... expectedReportContent) {
@@ -0,0 +1,95 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+public class ContentComparisonTest {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final LongAdder bytesRead = new LongAdder();
+
+	@Test
+	public void equalContentInSeveralChunks() throws IOException {
+		byte[] content = content(10 * CHUNK_SIZE + 7);
+		assertTrue(ContentComparison.equal(prepare("a",content),prepare("b",content),CHUNK_SIZE,bytesRead));
+		assertEquals(2 * content.length, bytesRead.sum());
+	}
+
+	@Test
+	public void mismatchInLastByte() throws IOException {
+		byte[] content = content(10 * CHUNK_SIZE + 7);
+		Path file1 = prepare("a",content);
+		content[content.length - 1]++;
+		assertFalse(ContentComparison.equal(file1,prepare("b",content),CHUNK_SIZE,bytesRead));
+	}
+
+	@Test
+	public void mismatchInMiddleOfChunk() throws IOException {
+		byte[] content = content(CHUNK_SIZE + 1);
+		Path file1 = prepare("a",content);
+		content[CHUNK_SIZE / 2]++;
+		assertFalse(ContentComparison.equal(file1,prepare("b",content),CHUNK_SIZE,bytesRead));
+	}
+
+	@Test
+	public void differentSizeNotRead() throws IOException {
+		assertFalse(ContentComparison.equal(prepare("a",content(10)),prepare("b",content(11)),CHUNK_SIZE,bytesRead));
+		assertEquals(0, bytesRead.sum());
+	}
+
+	@Test
+	public void emptyFilesEqual() throws IOException {
+		assertTrue(ContentComparison.equal(prepare("a",new byte[0]),prepare("b",new byte[0]),bytesRead));
+	}
+
+	@Test
+	public void comparedFileCanBeDeleted() throws IOException {
+		byte[] content = content(3 * CHUNK_SIZE);
+		Path file1 = prepare("a",content);
+		assertTrue(ContentComparison.equal(file1,prepare("b",content),CHUNK_SIZE,bytesRead));
+		Files.delete(file1);
+	}
+
+	@Test
+	public void comparedByReadingWhereMappingNotSupported() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			byte[] content = content(3 * CHUNK_SIZE + 7);
+			Path file1 = Files.write(fileSystem.getPath("/a"),content);
+			Path file2 = Files.write(fileSystem.getPath("/b"),content);
+			assertTrue(ContentComparison.equal(file1,file2,CHUNK_SIZE,bytesRead));
+			assertEquals(2 * content.length, bytesRead.sum());
+			content[2 * CHUNK_SIZE]++;
+			assertFalse(ContentComparison.equal(file1,Files.write(fileSystem.getPath("/c"),content),CHUNK_SIZE,bytesRead));
+		}
+	}
+
+	private Path prepare(String name, byte[] content) throws IOException {
+		return Files.write(folder.getRoot().toPath().resolve(name),content);
+	}
+
+	private static byte[] content(int size) {
+		byte[] result = new byte[size];
+		new Random(size).nextBytes(result);
+		return result;
+	}
+
+}
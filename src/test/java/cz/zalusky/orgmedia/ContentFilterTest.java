@@ -0,0 +1,52 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+public class ContentFilterTest {
+
+	@Test
+	public void noKeyLostWhenPutByParallelWorkers() throws InterruptedException, ExecutionException {
+		int workers = 8;
+		int keysPerWorker = 20000;
+		ContentFilter filter = ContentFilter.create(workers * keysPerWorker, 0.01, 1 << 20);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int w = 0; w < workers; w++) {
+				int worker = w;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < keysPerWorker; i++) {
+						filter.put(i, sample(worker, i));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		for (int w = 0; w < workers; w++) {
+			for (int i = 0; i < keysPerWorker; i++) {
+				assertTrue("worker " + w + ", key " + i, filter.mightContain(i, sample(w, i)));
+			}
+		}
+	}
+
+	private static HashCode sample(int worker, int i) {
+		return Hashing.sha256().newHasher().putInt(worker).putInt(i).hash();
+	}
+
+}
@@ -0,0 +1,189 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+public class ContentIndexTest {
+
+	@Rule
+	public TemporaryFolder source = new TemporaryFolder();
+
+	@Rule
+	public TemporaryFolder target = new TemporaryFolder();
+
+	@Test
+	public void findsFileWithEqualContent() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		prepare(target, "201512/20151210/IMG_5678.JPG", "def");
+		Path searched = prepare(source, "IMG_0001.JPG", "abc");
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		assertEquals(Collections.singleton(day.resolve("IMG_1234.JPG")), index.find(day, searched));
+	}
+
+	@Test
+	public void candidatesEliminatedInStages() throws IOException {
+		String middle = Strings.repeat("x", 3 * ContentIndex.SAMPLE_SIZE);
+		String changedMiddle = middle.substring(0, middle.length() / 2) + "y" + middle.substring(middle.length() / 2 + 1); // same head and tail
+		Path day = prepare(target, "201512/20151210/IMG_0001.JPG", "abc").getParent();
+		prepare(target, "201512/20151210/IMG_0002.JPG", "abcd");
+		prepare(target, "201512/20151210/IMG_0003.JPG", "xyz");
+		prepare(target, "201512/20151210/MVI_0004.AVI", "head" + middle + "tail");
+		prepare(target, "201512/20151210/MVI_0005.AVI", "head" + changedMiddle + "tail");
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		assertEquals(Collections.singleton(day.resolve("IMG_0001.JPG")), index.find(day, prepare(source, "IMG_0001.JPG", "abc")));
+		assertEquals(Collections.singleton(day.resolve("MVI_0004.AVI")), index.find(day, prepare(source, "MVI_0004.AVI", "head" + middle + "tail")));
+		DedupStatistics statistics = index.getStatistics();
+		assertEquals(10, statistics.getCandidates());
+		assertEquals(6, statistics.getEliminatedBySize());
+		assertEquals(1, statistics.getEliminatedBySample());
+		assertEquals(1, statistics.getEliminatedByHash());
+		assertEquals(3, statistics.getFullyRead());
+	}
+
+	@Test
+	public void indexNotSavedWhenNothingChanged() {
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		index.save();
+		assertFalse(Files.exists(target.getRoot().toPath().resolve(ContentIndex.FILE_NAME)));
+	}
+
+	@Test
+	public void indexSavedAndUpdatedByMove() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		Path searched = prepare(source, "IMG_5678.JPG", "def");
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		assertTrue(index.find(day, searched).isEmpty());
+		Path moved = day.resolve("IMG_5678.JPG");
+		index.plannedMove(searched, moved);
+		Files.move(searched, moved);
+		index.save();
+		List<String> lines = Files.readAllLines(target.getRoot().toPath().resolve(ContentIndex.FILE_NAME), Charsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0), lines.get(0).endsWith("\t201512/20151210/IMG_1234.JPG"));
+		assertTrue(lines.get(1), lines.get(1).endsWith("\t201512/20151210/IMG_5678.JPG"));
+		Path another = prepare(source, "IMG_9999.JPG", "def");
+		assertEquals(Collections.singleton(moved), ContentIndex.load(target.getRoot().toPath()).find(day, another));
+	}
+
+	@Test
+	public void newContentEliminatedByPersistedFilter() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		prepare(target, "201512/20151210/IMG_5678.JPG", "abd");
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		index.enableContentFilter(0.001, 1 << 10);
+		assertEquals(Collections.singleton(day.resolve("IMG_1234.JPG")), index.find(day, prepare(source, "IMG_0001.JPG", "abc")));
+		assertEquals(0, index.getStatistics().getEliminatedByFilter()); // samples of target were not known yet
+		index.save();
+		assertTrue(Files.isRegularFile(target.getRoot().toPath().resolve(ContentFilter.FILE_NAME)));
+		RunMetrics metrics = new RunMetrics();
+		index = ContentIndex.load(target.getRoot().toPath(), metrics);
+		index.enableContentFilter(0.001, 1 << 10);
+		assertTrue(index.find(day, prepare(source, "IMG_0002.JPG", "xyz")).isEmpty());
+		assertEquals(2, index.getStatistics().getEliminatedByFilter());
+		assertEquals(0, index.getStatistics().getEliminatedBySample());
+		assertEquals(3, metrics.getBytesRead()); // only sample of source
+		assertEquals(Collections.singleton(day.resolve("IMG_5678.JPG")), index.find(day, prepare(source, "IMG_0003.JPG", "abd")));
+	}
+
+	@Test
+	public void filterNotUsedForOtherIndexFile() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		index.enableContentFilter(0.001, 1 << 10);
+		index.find(day, prepare(source, "IMG_0001.JPG", "abc"));
+		index.save();
+		Path other = prepare(target, "201512/20151211/IMG_1234.JPG", "abd");
+		index = ContentIndex.load(target.getRoot().toPath());
+		assertTrue(index.find(other.getParent(), prepare(source, "IMG_0002.JPG", "xyz")).isEmpty());
+		index.save(); // index changed, filter persisted for previous index
+		index = ContentIndex.load(target.getRoot().toPath());
+		index.enableContentFilter(0.001, 1 << 10);
+		assertEquals(Collections.singleton(other), index.find(other.getParent(), prepare(source, "IMG_0003.JPG", "abd")));
+	}
+
+	@Test
+	public void reusedIndexKeepsComputedHashes() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		assertEquals(Collections.singleton(day.resolve("IMG_1234.JPG")), index.find(day, prepare(source, "IMG_0001.JPG", "abc")));
+		index.save();
+		RunMetrics metrics = new RunMetrics();
+		ContentIndex reused = index.reuse(metrics);
+		assertEquals(Collections.singleton(day.resolve("IMG_1234.JPG")), reused.find(day, prepare(source, "IMG_0002.JPG", "abc")));
+		assertEquals(3, metrics.getBytesRead()); // only sample of source
+		assertEquals(1, metrics.getListings()); // directory reconciled again
+		prepare(target, "201512/20151210/IMG_5678.JPG", "abd");
+		assertEquals(Collections.singleton(day.resolve("IMG_5678.JPG")), reused.reuse(new RunMetrics()).find(day, prepare(source, "IMG_0003.JPG", "abd")));
+	}
+
+	@Test
+	public void indexChangedByOtherProcessNotReused() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		index.find(day, prepare(source, "IMG_0001.JPG", "abc"));
+		index.save();
+		Files.write(target.getRoot().toPath().resolve(ContentIndex.FILE_NAME), Collections.singletonList("corrupted"), Charsets.UTF_8);
+		assertEquals(null, index.reuse(new RunMetrics()));
+	}
+
+	@Test
+	public void globalLookupListsOnlyDirectoriesOfCandidates() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		Path otherDay = prepare(target, "201511/20151130/IMG_0999.JPG", "abc").getParent();
+		Path removedDay = prepare(target, "201510/20151031/IMG_0888.JPG", "abc").getParent();
+		prepare(target, "201509/20150930/IMG_0777.JPG", "longer");
+		ContentIndex built = ContentIndex.load(target.getRoot().toPath());
+		built.enableGlobalLookup(); // no persisted index, library walked once
+		built.save();
+		Files.delete(removedDay.resolve("IMG_0888.JPG"));
+		Files.delete(removedDay);
+		RunMetrics metrics = new RunMetrics();
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath(), metrics);
+		index.enableGlobalLookup();
+		assertEquals(0, metrics.getListings());
+		assertEquals(Collections.singleton(otherDay.resolve("IMG_0999.JPG")), index.findElsewhere(day, prepare(source, "IMG_0001.JPG", "abc")));
+		assertEquals(2, metrics.getListings()); // existing directories of candidates of equal size, not the directory of different size
+	}
+
+	@Test
+	public void globalLookupCompletesIndexBuiltWithoutIt() throws IOException {
+		Path day = prepare(target, "201512/20151210/IMG_1234.JPG", "abc").getParent();
+		Path untouchedDay = prepare(target, "201511/20151130/IMG_0999.JPG", "def").getParent();
+		ContentIndex local = ContentIndex.load(target.getRoot().toPath());
+		Path moved = day.resolve("IMG_5678.JPG");
+		Path searched = prepare(source, "IMG_5678.JPG", "ghi");
+		assertTrue(local.find(day, searched).isEmpty());
+		local.plannedMove(searched, moved);
+		Files.move(searched, moved);
+		local.save(); // index of touched directory only
+		ContentIndex index = ContentIndex.load(target.getRoot().toPath());
+		index.enableGlobalLookup();
+		assertEquals(Collections.singleton(untouchedDay.resolve("IMG_0999.JPG")), index.findElsewhere(day, prepare(source, "IMG_0001.JPG", "def")));
+		index.save();
+		RunMetrics metrics = new RunMetrics();
+		ContentIndex completed = ContentIndex.load(target.getRoot().toPath(), metrics);
+		completed.enableGlobalLookup();
+		assertEquals(0, metrics.getListings()); // library indexed, not walked again
+	}
+
+	private static Path prepare(TemporaryFolder tempFolder, String filePath, String content) throws IOException {
+		Path file = tempFolder.getRoot().toPath().resolve(filePath);
+		Files.createDirectories(file.getParent());
+		return Files.write(file, content.getBytes(Charsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,46 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class DirectoryNamesTest {
+
+	@Test
+	public void freeNameReturnedAsIs() {
+		DirectoryNames names = new DirectoryNames();
+		names.add("IMG_1234.JPG");
+		assertEquals("IMG_5678.JPG", names.allocate("IMG_5678.JPG"));
+	}
+
+	@Test
+	public void underscoresAppendedBeforeLastDot() {
+		DirectoryNames names = new DirectoryNames();
+		names.add("IMG_1234.JPG");
+		names.add("IMG_1234_.JPG");
+		names.add("archive.tar.gz");
+		assertEquals("IMG_1234__.JPG", names.allocate("IMG_1234.JPG"));
+		assertEquals("archive.tar_.gz", names.allocate("archive.tar.gz"));
+	}
+
+	@Test
+	public void seriesOfConflicts() {
+		DirectoryNames names = new DirectoryNames();
+		names.add("IMG_0001.JPG");
+		for (int i = 1; i <= 5; i++) {
+			String allocated = names.allocate("IMG_0001.JPG");
+			assertEquals("IMG_0001" + Strings.repeat("_", i) + ".JPG", allocated);
+			names.add(allocated);
+		}
+	}
+
+	@Test
+	public void nameWithoutExtension() {
+		DirectoryNames names = new DirectoryNames();
+		names.add("README");
+		assertEquals("README_", names.allocate("README"));
+	}
+
+}
@@ -0,0 +1,177 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class Exif1ConversionTest {
+
+	@Rule
+	public TemporaryFolder source = new TemporaryFolder();
+
+	@Rule
+	public TemporaryFolder target = new TemporaryFolder();
+
+	public Exif1Conversion conversion = new Exif1Conversion();
+
+	private Report report;
+	
+	@Test
+	public void movedByDateTimeOriginal() throws IOException {
+		prepareJpeg("scan0001.jpg", "2015:12:10 08:30:00", ByteOrder.LITTLE_ENDIAN, 0);
+		prepareJpeg("WhatsApp Image.JPEG", "2015:12:11 20:00:00", ByteOrder.BIG_ENDIAN, 0);
+		performConversion();
+		verifyTarget(
+				"OK   : file $SOURCE$\\scan0001.jpg moved into $TARGET$\\201512\\20151210\\scan0001.jpg",
+				"OK   : file $SOURCE$\\WhatsApp Image.JPEG moved into $TARGET$\\201512\\20151211\\WhatsApp Image.JPEG",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertNotExists("$SOURCE$");
+	}
+
+	@Test
+	public void filesWithoutDateTimeOriginalSkipped() throws IOException {
+		prepareSource("file.txt","noexif.jpg~abc");
+		prepareJpeg("zero.jpg", "0000:00:00 00:00:00", ByteOrder.LITTLE_ENDIAN, 0);
+		performConversion();
+		verifyTarget(
+				"ERROR: file $SOURCE$\\file.txt is not .jpg or .jpeg, skipped",
+				"ERROR: file $SOURCE$\\noexif.jpg has no EXIF DateTimeOriginal, skipped",
+				"ERROR: file $SOURCE$\\zero.jpg has no EXIF DateTimeOriginal, skipped",
+				"ERROR: preserving directory $SOURCE$, there are remaining files [file.txt, noexif.jpg, zero.jpg]"
+		);
+	}
+
+	@Test
+	public void onlyHeaderRead() throws IOException {
+		prepareJpeg("large.jpg", "2015:12:10 08:30:00", ByteOrder.LITTLE_ENDIAN, 1 << 20);
+		performConversion();
+		verifyTarget(
+				"OK   : file $SOURCE$\\large.jpg moved into $TARGET$\\201512\\20151210\\large.jpg",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertTrue(report.getMetrics().getBytesRead() < ExifDate.WINDOW + 100);
+	}
+
+	/**
+	 * Creates JPEG consisting of APP0, APP1 with Exif IFD containing only DateTimeOriginal and image data of given size.
+	 */
+	private void prepareJpeg(String fileName, String dateTimeOriginal, ByteOrder order, int imageSize) throws IOException {
+		ByteBuffer tiff = ByteBuffer.allocate(64).order(order);
+		tiff.putShort(order == ByteOrder.LITTLE_ENDIAN ? (short)0x4949 : (short)0x4D4D).putShort((short)42).putInt(8);
+		tiff.putShort((short)1).putShort((short)0x8769).putShort((short)4).putInt(1).putInt(26).putInt(0); // IFD0 with Exif IFD pointer
+		tiff.putShort((short)1).putShort((short)0x9003).putShort((short)2).putInt(20).putInt(44).putInt(0); // Exif IFD with DateTimeOriginal
+		tiff.put((dateTimeOriginal + "\0").getBytes(Charsets.US_ASCII));
+		ByteBuffer jpeg = ByteBuffer.allocate(2 + 18 + 10 + 64 + 4 + imageSize);
+		jpeg.putShort((short)0xFFD8);
+		jpeg.putShort((short)0xFFE0).putShort((short)16).put("JFIF\0".getBytes(Charsets.US_ASCII)).put(new byte[9]);
+		jpeg.putShort((short)0xFFE1).putShort((short)(2 + 6 + 64)).put("Exif\0\0".getBytes(Charsets.US_ASCII)).put(tiff.array());
+		jpeg.putShort((short)0xFFDA).putShort((short)2);
+		Files.write(jpeg.array(), new File(source.getRoot(), fileName));
+	}
+
+	private void prepareSource(String... fileNames) {
+		prepare(source, fileNames);
+	}
+	
+	private void prepareTarget(String... filePaths) {
+		prepare(target, filePaths);
+	}
+	
+	private static void prepare(TemporaryFolder tempFolder, String... filePaths) {
+		try {
+			for (String filePath : filePaths) {
+				List<String> split = Splitter.on('/').splitToList(filePath);
+				File dir = tempFolder.getRoot();
+				for (String subdirName : split.subList(0, split.size() - 1)) {
+					File subdir = new File(dir,subdirName);
+					if (!subdir.exists()) {
+						if (!subdir.mkdir()) throw new IOException();
+					}
+					if (!subdir.isDirectory()) throw new IOException();
+					dir = subdir;
+				}
+				String fileName = Iterables.getLast(split);
+				if (!"".equals(fileName)) {
+					int tilde = fileName.indexOf("~");
+					String content;
+					if (tilde == -1) {
+						content = (fileName + "***").substring(0,3);
+					} else {
+						content = fileName.substring(tilde + 1);
+						fileName = fileName.substring(0,tilde);
+					}
+					File file = new File(dir,fileName);
+					if (!file.createNewFile()) throw new IOException();
+					Files.write(content, file, Charsets.UTF_8);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void performConversion() {
+		this.report = conversion.execute(source.getRoot().toPath(), target.getRoot().toPath());
+	}
+
+	private void verifyTarget(String... expectedReportContent) {
+		List<String> actualReportContent = report.getContent();
+		assertEquals("Unequal length of expected and actual report:\n" + Arrays.asList(expectedReportContent) + "\n" + actualReportContent,
+				expectedReportContent.length, actualReportContent.size());
+		IntStream.range(0, expectedReportContent.length).forEach(i -> {
+			String expectedReportContentForComparison = expectedReportContent[i]
+					.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+					.replace("$TARGET$",target.getRoot().getAbsolutePath());
+			assertEquals(expectedReportContentForComparison, actualReportContent.get(i));
+		});
+	}
+
+	private void assertExists(String filePath, Integer expectedChildCount) {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertTrue(f.getAbsolutePath(),f.exists());
+		if (expectedChildCount != null) {
+			assertEquals(expectedChildCount.intValue(), f.listFiles().length);
+		}
+	}
+
+	private void assertExists(String filePath, String expectedContent) throws IOException {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertTrue(f.getAbsolutePath(),f.exists());
+		String actualContent = Files.toString(f, Charsets.UTF_8);
+		assertEquals(expectedContent, actualContent);
+	}
+
+	private void assertNotExists(String filePath) {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertFalse(f.exists());
+	}
+
+}
+
@@ -187,6 +187,12 @@ public class HuaweiXiaomi1ConversionTest {
 		assertNotExists("$SOURCE$");
 	}
 
+	@Test
+	public void complexTestWithThreadPerTask() throws IOException {
+		conversion.setThreadPerTask(8);
+		complexTest();
+	}
+
 	private void prepareSource(String... fileNames) {
 		prepare(source, fileNames);
 	}
@@ -229,7 +235,7 @@ public class HuaweiXiaomi1ConversionTest {
 	}
 
 	private void performConversion() {
-		this.report = conversion.execute(source.getRoot(), target.getRoot());
+		this.report = conversion.execute(source.getRoot().toPath(), target.getRoot().toPath());
 	}
 
 	private void verifyTarget(String... expectedReportContent) {
@@ -0,0 +1,143 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class JobServerTest {
+
+	@Rule
+	public TemporaryFolder work = new TemporaryFolder();
+
+	private JobServer server;
+
+	private Thread thread;
+
+	private File tokenDirectory;
+
+	@Before
+	public void setUp() throws IOException {
+		tokenDirectory = work.newFolder("home");
+		server = new JobServer(ImmutableMap.of("samsung1", new Samsung1Conversion()), 0, tokenDirectory.toPath());
+		thread = new Thread(server::run);
+		thread.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		server.close();
+		thread.join();
+	}
+
+	@Test
+	public void jobsPerformedWithReports() throws IOException {
+		File target = work.newFolder("target");
+		new File(target, "201501").mkdir();
+		File phone1 = prepareSource("phone1", "20150129_082558.jpg", "abc");
+		File phone2 = prepareSource("phone2", "20150129_082558.jpg", "abc");
+		List<String> first = submit( "samsung1", phone1.getPath(), target.getPath());
+		assertEquals(Arrays.asList(
+				"OK   : file " + new File(phone1, "20150129_082558.jpg").getAbsolutePath() + " moved into "
+						+ new File(target, "201501/20150129/20150129_082558.jpg").getAbsolutePath(),
+				"OK   : there was no file remaining in directory " + phone1.getAbsolutePath(),
+				JobServer.SUMMARY + "1 moved, 0 renamed, 0 deleted as duplicates, 0 skipped, 0 failed, 3 bytes moved"
+		), first);
+		List<String> second = submit( "samsung1", phone2.getPath(), target.getPath());
+		assertEquals(JobServer.SUMMARY + "0 moved, 0 renamed, 1 deleted as duplicates, 0 skipped, 0 failed, 0 bytes moved", second.get(second.size() - 1));
+	}
+
+	@Test
+	public void invalidJobRejected() {
+		List<String> response = submit( "unknown", "a", "b");
+		assertEquals(1, response.size());
+		assertTrue(response.get(0), response.get(0).startsWith("ERROR: invalid job"));
+	}
+
+	@Test
+	public void failedJobReported() throws IOException {
+		List<String> response = submit( "samsung1", new File(work.getRoot(), "missing").getPath(), work.newFolder("target").getPath());
+		assertEquals(1, response.size());
+		assertTrue(response.get(0), response.get(0).startsWith("ERROR: "));
+	}
+
+	@Test
+	public void connectionWithoutTokenRejected() throws IOException {
+		File target = work.newFolder("target");
+		File phone = prepareSource("phone", "20150129_082558.jpg", "abc");
+		List<String> response = send("POST / HTTP/1.1", "samsung1\t" + phone.getAbsolutePath() + "\t" + target.getAbsolutePath());
+		assertEquals(Arrays.asList("ERROR: not authorized"), response);
+		response = send("TOKEN\t0123", "samsung1\t" + phone.getAbsolutePath() + "\t" + target.getAbsolutePath());
+		assertEquals(Arrays.asList("ERROR: not authorized"), response);
+		assertTrue(new File(phone, "20150129_082558.jpg").exists());
+	}
+
+	@Test
+	public void connectionClosedAfterInvalidJob() throws IOException {
+		File target = work.newFolder("target");
+		File phone = prepareSource("phone", "20150129_082558.jpg", "abc");
+		String token = new String(java.nio.file.Files.readAllBytes(server.getTokenFile()), Charsets.US_ASCII);
+		List<String> response = send("TOKEN\t" + token, "Content-Type: text/plain", "samsung1\t" + phone.getAbsolutePath() + "\t" + target.getAbsolutePath());
+		assertEquals(1, response.size());
+		assertTrue(response.get(0), response.get(0).startsWith("ERROR: invalid job"));
+		assertTrue(new File(phone, "20150129_082558.jpg").exists());
+	}
+
+	@Test
+	public void tokenFileReadableOnlyByOwner() throws IOException {
+		if (server.getTokenFile().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			assertEquals("rw-------", PosixFilePermissions.toString(java.nio.file.Files.getPosixFilePermissions(server.getTokenFile())));
+		}
+		server.close();
+		assertFalse(server.getTokenFile().toFile().exists());
+	}
+
+	private List<String> submit(String conversion, String source, String target) {
+		return JobServer.submit(tokenDirectory.toPath(), server.getPort(), conversion, source, target);
+	}
+
+	/**
+	 * Sends raw lines and returns all lines received until the server closes the connection.
+	 */
+	private List<String> send(String... lines) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			socket.getOutputStream().write((String.join("\n", lines) + "\n").getBytes(Charsets.UTF_8));
+			socket.getOutputStream().flush();
+			List<String> result = new ArrayList<>();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (!line.isEmpty()) {
+					result.add(line);
+				}
+			}
+			return result;
+		}
+	}
+
+	private File prepareSource(String name, String fileName, String content) throws IOException {
+		File dir = work.newFolder(name);
+		Files.write(content, new File(dir, fileName), Charsets.UTF_8);
+		return dir;
+	}
+
+}
@@ -0,0 +1,149 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import cz.zalusky.orgmedia.MediaTreeGenerator.Layout;
+import cz.zalusky.orgmedia.Report.Type;
+
+public class MediaTreeGeneratorTest {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void canonTreeConverted() {
+		verifyConversion(Layout.CANON, temp.getRoot().toPath(), 300);
+	}
+
+	@Test
+	public void samsungTreeConverted() {
+		verifyConversion(Layout.SAMSUNG, temp.getRoot().toPath(), 300);
+	}
+
+	@Test
+	public void huaweiXiaomiTreeConverted() {
+		verifyConversion(Layout.HUAWEI_XIAOMI, temp.getRoot().toPath(), 300);
+	}
+
+	@Test
+	public void largeTreeConvertedInMemory() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			verifyConversion(Layout.CANON, fileSystem.getPath("/work"), 5000);
+		}
+	}
+
+	@Test
+	public void largeTreeConvertedInMemoryWindows() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.windows())) {
+			verifyConversion(Layout.SAMSUNG, fileSystem.getPath("C:\\work"), 5000);
+		}
+	}
+
+	@Test
+	public void sameSeedSameTree() throws IOException {
+		Path first = temp.newFolder("first").toPath();
+		Path second = temp.newFolder("second").toPath();
+		newGenerator(Layout.SAMSUNG, 300).generate(first.resolve("source"),first.resolve("target"));
+		newGenerator(Layout.SAMSUNG, 300).generate(second.resolve("source"),second.resolve("target"));
+		assertEquals(fingerprint(first,first), fingerprint(second,second));
+	}
+
+	@Test
+	public void sameTreeInMemory() throws IOException {
+		Path onDisk = temp.newFolder("disk").toPath();
+		newGenerator(Layout.CANON, 300).generate(onDisk.resolve("source"),onDisk.resolve("target"));
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			Path inMemory = fileSystem.getPath("/memory");
+			newGenerator(Layout.CANON, 300).generate(inMemory.resolve("source"),inMemory.resolve("target"));
+			assertEquals(fingerprint(onDisk,onDisk), fingerprint(inMemory,inMemory));
+		}
+	}
+
+	@Test
+	public void generatedFileCountMatchesRequested() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			for (Layout layout : Layout.values()) {
+				Path root = fileSystem.getPath("/" + layout);
+				MediaTreeGenerator generator = newGenerator(layout, 9000);
+				generator.setDays(LocalDate.of(2015,12,1),1);
+				generator.generate(root.resolve("source"),root.resolve("target"));
+				try (Stream<Path> files = Files.walk(root.resolve("source"))) {
+					assertEquals(layout.name(), 9000, files.filter(Files::isRegularFile).filter(f -> !f.toString().endsWith(".THM")).count());
+				}
+				try (Stream<Path> files = Files.walk(root.resolve("target"))) {
+					assertEquals(layout.name(), generator.getDuplicates() + generator.getCollisions(), files.filter(Files::isRegularFile).count());
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyCanonFilesPerDayRejected() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			MediaTreeGenerator generator = newGenerator(Layout.CANON, 10001);
+			generator.setDays(LocalDate.of(2015,12,1),1);
+			generator.generate(fileSystem.getPath("/source"),fileSystem.getPath("/target"));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void existingFileNotOverwritten() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			newGenerator(Layout.SAMSUNG, 10).generate(fileSystem.getPath("/source"),fileSystem.getPath("/target"));
+			newGenerator(Layout.SAMSUNG, 10).generate(fileSystem.getPath("/source"),fileSystem.getPath("/target"));
+		}
+	}
+
+	private static void verifyConversion(Layout layout, Path root, int files) {
+		Path source = root.resolve("source");
+		Path target = root.resolve("target");
+		MediaTreeGenerator generator = newGenerator(layout, files);
+		generator.generate(source,target);
+		Report report = layout.newConversion().execute(source,target);
+		assertEquals(generator.getDuplicates(), report.getCount(Type.DUPLICATE_DELETED));
+		assertEquals(generator.getCollisions(), report.getCount(Type.RENAMED));
+		assertEquals(files - generator.getDuplicates() - generator.getCollisions(), report.getCount(Type.MOVED));
+		assertEquals(0, report.getCount(Type.SKIPPED));
+		assertEquals(0, report.getCount(Type.FAILED));
+	}
+
+	private static MediaTreeGenerator newGenerator(Layout layout, int files) {
+		MediaTreeGenerator result = new MediaTreeGenerator(layout);
+		result.setSeed(1);
+		result.setFiles(files);
+		result.setDays(LocalDate.of(2015,12,1),5);
+		result.setPhotoSizes(100,20000);
+		result.setVideoSizes(10000,100000);
+		result.setDuplicateRatio(0.2);
+		result.setCollisionRatio(0.1);
+		return result;
+	}
+
+	private static String fingerprint(Path root, Path file) throws IOException {
+		if (Files.isRegularFile(file)) {
+			String relativePath = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(),"/");
+			return relativePath + "=" + Hashing.sha256().hashBytes(Files.readAllBytes(file)) + "\n";
+		}
+		StringBuilder result = new StringBuilder();
+		for (ListedFile child : ListedFile.listSorted(file,new RunMetrics())) {
+			result.append(fingerprint(root,child.path));
+		}
+		return result.toString();
+	}
+
+}
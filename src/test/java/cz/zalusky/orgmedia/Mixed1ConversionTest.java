@@ -0,0 +1,159 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class Mixed1ConversionTest {
+
+	@Rule
+	public TemporaryFolder source = new TemporaryFolder();
+
+	@Rule
+	public TemporaryFolder target = new TemporaryFolder();
+
+	public Mixed1Conversion conversion = new Mixed1Conversion();
+
+	private Report report;
+	
+	@Test
+	public void emptySourceEmptyTarget() {
+		performConversion();
+		verifyTarget("OK   : there was no file remaining in directory $SOURCE$");
+	}
+
+	@Test
+	public void unknownFilesAndDirectoriesSkipped() {
+		prepareSource("file.txt","invaliddir/","20151210_010203.jpg/","2015_12_10");
+		performConversion();
+		verifyTarget(
+				"ERROR: directory $SOURCE$\\20151210_010203.jpg is neither YYYY_MM_DD directory nor YYYYMMDD_HHMMSS.jpg or .mp4 nor matches /" + HuaweiXiaomi1Conversion.VALID_FILES + "/, skipped",
+				"ERROR: file $SOURCE$\\2015_12_10 is neither YYYY_MM_DD directory nor YYYYMMDD_HHMMSS.jpg or .mp4 nor matches /" + HuaweiXiaomi1Conversion.VALID_FILES + "/, skipped",
+				"ERROR: file $SOURCE$\\file.txt is neither YYYY_MM_DD directory nor YYYYMMDD_HHMMSS.jpg or .mp4 nor matches /" + HuaweiXiaomi1Conversion.VALID_FILES + "/, skipped",
+				"ERROR: directory $SOURCE$\\invaliddir is neither YYYY_MM_DD directory nor YYYYMMDD_HHMMSS.jpg or .mp4 nor matches /" + HuaweiXiaomi1Conversion.VALID_FILES + "/, skipped",
+				"ERROR: preserving directory $SOURCE$, there are remaining files [20151210_010203.jpg, 2015_12_10, file.txt, invaliddir]"
+		);
+	}
+
+	@Test
+	public void allLayoutsConvertedInOnePass() throws IOException {
+		prepareSource("2015_12_10/","2015_12_10/IMG_1234.JPG~abc","2015_12_10/MVI_1234.THM","20151210_010203.jpg~def","IMG_20151211_080000.jpg~ghi","VID_20151210_090000.mp4~abc");
+		performConversion();
+		verifyTarget(
+				"OK   : file $SOURCE$\\20151210_010203.jpg moved into $TARGET$\\201512\\20151210\\20151210_010203.jpg",
+				"OK   : file $SOURCE$\\2015_12_10\\IMG_1234.JPG moved into $TARGET$\\201512\\20151210\\IMG_1234.JPG",
+				"OK   : file $SOURCE$\\2015_12_10\\MVI_1234.THM deleted",
+				"OK   : there was no file remaining in directory $SOURCE$\\2015_12_10",
+				"OK   : file $SOURCE$\\IMG_20151211_080000.jpg moved into $TARGET$\\201512\\20151211\\IMG_20151211_080000.jpg",
+				"OK   : file $SOURCE$\\VID_20151210_090000.mp4 deleted because target exists with same content and different name [IMG_1234.JPG]",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertExists("$TARGET$\\201512\\20151210",2);
+		assertExists("$TARGET$\\201512\\20151211\\IMG_20151211_080000.jpg","ghi");
+		assertNotExists("$SOURCE$");
+		assertEquals(4, report.getMetrics().getListings()); // source, its day directory, target and month directory listed once
+	}
+
+	private void prepareSource(String... fileNames) {
+		prepare(source, fileNames);
+	}
+	
+	private void prepareTarget(String... filePaths) {
+		prepare(target, filePaths);
+	}
+	
+	private static void prepare(TemporaryFolder tempFolder, String... filePaths) {
+		try {
+			for (String filePath : filePaths) {
+				List<String> split = Splitter.on('/').splitToList(filePath);
+				File dir = tempFolder.getRoot();
+				for (String subdirName : split.subList(0, split.size() - 1)) {
+					File subdir = new File(dir,subdirName);
+					if (!subdir.exists()) {
+						if (!subdir.mkdir()) throw new IOException();
+					}
+					if (!subdir.isDirectory()) throw new IOException();
+					dir = subdir;
+				}
+				String fileName = Iterables.getLast(split);
+				if (!"".equals(fileName)) {
+					int tilde = fileName.indexOf("~");
+					String content;
+					if (tilde == -1) {
+						content = (fileName + "***").substring(0,3);
+					} else {
+						content = fileName.substring(tilde + 1);
+						fileName = fileName.substring(0,tilde);
+					}
+					File file = new File(dir,fileName);
+					if (!file.createNewFile()) throw new IOException();
+					Files.write(content, file, Charsets.UTF_8);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void performConversion() {
+		this.report = conversion.execute(source.getRoot().toPath(), target.getRoot().toPath());
+	}
+
+	private void verifyTarget(String... expectedReportContent) {
+		List<String> actualReportContent = report.getContent();
+		assertEquals("Unequal length of expected and actual report:\n" + Arrays.asList(expectedReportContent) + "\n" + actualReportContent,
+				expectedReportContent.length, actualReportContent.size());
+		IntStream.range(0, expectedReportContent.length).forEach(i -> {
+			String expectedReportContentForComparison = expectedReportContent[i]
+					.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+					.replace("$TARGET$",target.getRoot().getAbsolutePath());
+			assertEquals(expectedReportContentForComparison, actualReportContent.get(i));
+		});
+	}
+
+	private void assertExists(String filePath, Integer expectedChildCount) {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertTrue(f.getAbsolutePath(),f.exists());
+		if (expectedChildCount != null) {
+			assertEquals(expectedChildCount.intValue(), f.listFiles().length);
+		}
+	}
+
+	private void assertExists(String filePath, String expectedContent) throws IOException {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertTrue(f.getAbsolutePath(),f.exists());
+		String actualContent = Files.toString(f, Charsets.UTF_8);
+		assertEquals(expectedContent, actualContent);
+	}
+
+	private void assertNotExists(String filePath) {
+		String replaced = filePath
+				.replace("$SOURCE$",source.getRoot().getAbsolutePath())
+				.replace("$TARGET$",target.getRoot().getAbsolutePath());
+		File f = new File(replaced);
+		assertFalse(f.exists());
+	}
+
+}
+
@@ -6,10 +6,21 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.IntStream;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -18,6 +29,8 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
 
 public class Samsung1ConversionTest {
 
@@ -27,6 +40,9 @@ public class Samsung1ConversionTest {
 	@Rule
 	public TemporaryFolder target = new TemporaryFolder();
 
+	@Rule
+	public TemporaryFolder work = new TemporaryFolder();
+
 	public Samsung1Conversion conversion = new Samsung1Conversion();
 
 	private Report report;
@@ -89,6 +105,32 @@ public class Samsung1ConversionTest {
 		assertNotExists("$SOURCE$");
 	}
 	
+	@Test
+	public void sameContentInOtherDayDeletedWithGlobalDedup() {
+		prepareSource("20151210_010203.jpg~abc","20151210_040506.jpg~def");
+		prepareTarget("201511/","201511/20151130/20151130_235959.jpg~abc","201512/");
+		conversion.setGlobalDedup(true);
+		performConversion();
+		verifyTarget(
+				"OK   : file $SOURCE$\\20151210_010203.jpg deleted because target exists with same content in other directory [201511/20151130/20151130_235959.jpg]",
+				"OK   : file $SOURCE$\\20151210_040506.jpg moved into $TARGET$\\201512\\20151210\\20151210_040506.jpg",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertExists("$TARGET$\\201511\\20151130",1);
+		assertExists("$TARGET$\\201512\\20151210",1);
+		assertNotExists("$SOURCE$");
+	}
+	
+	@Test
+	public void sameContentInOtherDayMovedWithoutGlobalDedup() {
+		prepareSource("20151210_010203.jpg~abc");
+		prepareTarget("201511/","201511/20151130/20151130_235959.jpg~abc","201512/");
+		performConversion();
+		verifyTarget("OK   : file $SOURCE$\\20151210_010203.jpg moved into $TARGET$\\201512\\20151210\\20151210_010203.jpg", "OK   : there was no file remaining in directory $SOURCE$");
+		assertExists("$TARGET$\\201511\\20151130",1);
+		assertExists("$TARGET$\\201512\\20151210",1);
+	}
+	
 	@Test
 	public void differentContentSameNameRenamed() throws IOException {
 		prepareSource("20151210_010203.jpg~abc");
@@ -157,6 +199,240 @@ public class Samsung1ConversionTest {
 		assertNotExists("$SOURCE$");
 	}
 
+	@Test
+	public void complexTestWithWorkers() throws IOException {
+		conversion.setWorkers(4);
+		complexTest();
+	}
+
+	@Test
+	public void counters() throws IOException {
+		prepareSource("20150129_082558.jpg~abc","20150129_082616.jpg~def","20150129_082621.jpg~ghi","20150130_181055.jpg~jkl","invalid.jpg");
+		prepareTarget("201501/","201501/20150129/20150129_082558.jpg~abc","201501/20150129/20150129_082616.jpg~xyz");
+		performConversion();
+		assertEquals(2, report.getCount(Report.Type.MOVED));
+		assertEquals(1, report.getCount(Report.Type.RENAMED));
+		assertEquals(1, report.getCount(Report.Type.DUPLICATE_DELETED));
+		assertEquals(1, report.getCount(Report.Type.SKIPPED));
+		assertEquals(0, report.getCount(Report.Type.FAILED));
+		assertEquals(9, report.getBytesMoved());
+		assertEquals("2 moved, 1 renamed, 1 deleted as duplicates, 1 skipped, 0 failed, 9 bytes moved", report.getSummary());
+	}
+
+	@Test
+	public void metrics() throws IOException {
+		prepareSource("20150129_082558.jpg~abc","20150129_082616.jpg~def","20150129_082621.jpg~ghi","20150130_181055.jpg~jkl","invalid.jpg");
+		prepareTarget("201501/","201501/20150129/20150129_082558.jpg~abc","201501/20150129/20150129_082616.jpg~xyz");
+		performConversion();
+		RunMetrics metrics = report.getMetrics();
+		assertEquals(4, metrics.getFilesProcessed());
+		assertEquals(9, metrics.getBytesMoved());
+		assertEquals(21, metrics.getBytesRead()); // samples of four sources and two targets of the same size, byte comparison of duplicate
+		assertEquals(3, metrics.getListings()); // source, existing target day directory, source when deleted if empty
+		assertEquals(13, metrics.getStats()); // listed children of source and target day directory, three target directories, size of three moved files
+		assertTrue(metrics.getNanos(RunMetrics.Phase.MOVE) > 0);
+		assertTrue(metrics.getNanos(RunMetrics.Phase.DEDUP) > 0);
+		assertTrue(metrics.getWallNanos() >= metrics.getNanos(RunMetrics.Phase.SCAN));
+		assertTrue(metrics.toString(), metrics.toString().contains(" files/s, "));
+	}
+
+	@Test
+	public void progressPublishedDuringRun() throws Exception {
+		prepareSource("20150129_082558.jpg~abc","20150130_181055.jpg~jkl");
+		ObjectName name = new ObjectName("cz.zalusky.orgmedia:type=Progress,source=" + ObjectName.quote(source.getRoot().getAbsolutePath()));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<Object> attributes = new ArrayList<>();
+		conversion = new Samsung1Conversion() {
+			@Override
+			void cleanUp(Path source, Task task) {
+				try {
+					for (String attribute : Arrays.asList("Phase","Total","Processed","Remaining","CurrentDirectory")) {
+						attributes.add(server.getAttribute(name, attribute));
+					}
+				} catch (JMException e) {
+					throw new RuntimeException(e);
+				}
+				super.cleanUp(source, task);
+			}
+		};
+		performConversion();
+		assertEquals(Arrays.asList("PLAN", 2L, 2L, 0L, new File(target.getRoot(),"201501\\20150130").getPath()), attributes);
+		assertFalse(server.isRegistered(name));
+	}
+
+	@Test
+	public void planChangesNothingAndIsExecutedFromFile() throws IOException {
+		prepareSource("20150129_082558.jpg~abc","20150129_082559.jpg~abc","20150129_082616.jpg~def","20150130_181055.jpg~jkl","invalid.jpg");
+		prepareTarget("201501/","201501/20150129/20150129_082616.jpg~xyz");
+		Plan plan = conversion.plan(source.getRoot().toPath(), target.getRoot().toPath());
+		assertEquals("1 directories to create, 2 to move, 1 to rename, 1 to delete as duplicates, 0 to delete, 1 skipped", plan.getSummary());
+		assertExists("$SOURCE$",5);
+		assertExists("$TARGET$",1);
+		assertExists("$TARGET$\\201501\\20150129",1);
+		File planFile = work.newFile("plan.txt");
+		plan.write(planFile.toPath());
+		this.report = conversion.execute(Plan.read(planFile.toPath()));
+		verifyTarget(
+				"OK   : file $SOURCE$\\20150129_082558.jpg moved into $TARGET$\\201501\\20150129\\20150129_082558.jpg",
+				"OK   : file $SOURCE$\\20150129_082559.jpg deleted because target exists with same content and different name [20150129_082558.jpg]",
+				"OK   : file $SOURCE$\\20150129_082616.jpg moved into $TARGET$\\201501\\20150129\\20150129_082616_.jpg because source name was in use in target with different content",
+				"OK   : file $SOURCE$\\20150130_181055.jpg moved into $TARGET$\\201501\\20150130\\20150130_181055.jpg",
+				"ERROR: file $SOURCE$\\invalid.jpg is not YYYYMMDD_HHMMSS.jpg or .mp4, skipped",
+				"ERROR: preserving directory $SOURCE$, there are remaining files [invalid.jpg]"
+		);
+		assertExists("$TARGET$\\201501\\20150129",3);
+		assertExists("$TARGET$\\201501\\20150129\\20150129_082616_.jpg","def");
+		assertExists("$TARGET$\\201501\\20150130\\20150130_181055.jpg","jkl");
+		assertExists("$SOURCE$",1);
+	}
+
+	@Test
+	public void interruptedRunResumedFromJournal() {
+		prepareSource("20150129_082558.jpg~abc","20150129_082559.jpg~def","20150130_181055.jpg~jkl");
+		prepareTarget("201501/");
+		Plan plan = conversion.plan(source.getRoot().toPath(), target.getRoot().toPath());
+		Journal journal = Journal.start(plan);
+		conversion.perform(plan.tasks.get(0), new RunMetrics(), journal); // interrupted after the task of first file
+		journal.close(false);
+		assertExists("$TARGET$\\" + Journal.FILE_NAME, (Integer)null);
+		performConversion();
+		verifyTarget(
+				"OK   : resuming interrupted conversion, 2 operations already performed",
+				"OK   : file $SOURCE$\\20150129_082559.jpg moved into $TARGET$\\201501\\20150129\\20150129_082559.jpg",
+				"OK   : file $SOURCE$\\20150130_181055.jpg moved into $TARGET$\\201501\\20150130\\20150130_181055.jpg",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertExists("$TARGET$\\201501\\20150129",2);
+		assertExists("$TARGET$\\201501\\20150130",1);
+		assertNotExists("$TARGET$\\" + Journal.FILE_NAME);
+		assertNotExists("$SOURCE$");
+	}
+
+	@Test
+	public void journalSyncedInBatches() {
+		prepareSource("20150129_082558.jpg~58","20150129_082559.jpg~59","20150129_082600.jpg~00","20150129_082601.jpg~01","20150129_082602.jpg~02",
+				"20150129_082603.jpg~03","20150129_082604.jpg~04","20150129_082605.jpg~05","20150129_082606.jpg~06","20150129_082607.jpg~07");
+		prepareTarget("201501/");
+		conversion.setJournalSync(4, Long.MAX_VALUE / 2);
+		performConversion();
+		assertEquals(10, report.getCount(Report.Type.MOVED));
+		assertEquals(3, report.getMetrics().getJournalSyncs()); // plan, after 4th and 8th of eleven tasks including clean-up
+	}
+
+	@Test
+	public void journalDisabled() {
+		prepareSource("20150129_082558.jpg~58","20150129_082559.jpg~59");
+		prepareTarget("201501/");
+		conversion.setJournal(false);
+		performConversion();
+		assertEquals(2, report.getCount(Report.Type.MOVED));
+		assertEquals(0, report.getMetrics().getJournalSyncs());
+		assertNotExists("$TARGET$\\" + Journal.FILE_NAME);
+	}
+
+	@Test
+	public void unjournaledAndHalfFinishedMovesRepaired() throws IOException {
+		prepareSource("20150129_082558.jpg~abc","20150129_082559.jpg~def","20150129_082600.jpg~ghi","20150129_082601.jpg~jkl");
+		prepareTarget("201501/");
+		Plan plan = conversion.plan(source.getRoot().toPath(), target.getRoot().toPath());
+		Journal.start(plan).close(false); // interrupted before any operation was journaled
+		prepareTarget("201501/20150129/20150129_082559.jpg~de","201501/20150129/20150129_082600.jpg~ghi","201501/20150129/20150129_082601.jpg~jkl");
+		new File(source.getRoot(),"20150129_082601.jpg").delete(); // moved
+		performConversion();
+		verifyTarget(
+				"OK   : resuming interrupted conversion, 0 operations already performed",
+				"OK   : file $SOURCE$\\20150129_082558.jpg moved into $TARGET$\\201501\\20150129\\20150129_082558.jpg",
+				"OK   : file $SOURCE$\\20150129_082559.jpg moved into $TARGET$\\201501\\20150129\\20150129_082559.jpg",
+				"OK   : file $SOURCE$\\20150129_082600.jpg moved into $TARGET$\\201501\\20150129\\20150129_082600.jpg",
+				"OK   : file $SOURCE$\\20150129_082601.jpg moved into $TARGET$\\201501\\20150129\\20150129_082601.jpg",
+				"OK   : there was no file remaining in directory $SOURCE$"
+		);
+		assertExists("$TARGET$\\201501\\20150129\\20150129_082559.jpg","def");
+		assertExists("$TARGET$\\201501\\20150129\\20150129_082600.jpg","ghi");
+		assertExists("$TARGET$\\201501\\20150129",4);
+		assertNotExists("$SOURCE$");
+	}
+
+	@Test
+	public void planOfInMemoryFileSystemExecutedFromFile() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.windows())) {
+			Path sourceRoot = java.nio.file.Files.createDirectories(fileSystem.getPath("C:\\source"));
+			Path targetRoot = java.nio.file.Files.createDirectories(fileSystem.getPath("C:\\target\\201501\\20150129"));
+			java.nio.file.Files.write(sourceRoot.resolve("20150129_082558.jpg"), "abc".getBytes(Charsets.UTF_8));
+			java.nio.file.Files.write(sourceRoot.resolve("20150129_082616.jpg"), "def".getBytes(Charsets.UTF_8));
+			java.nio.file.Files.write(targetRoot.resolve("20150129_082616.jpg"), "def".getBytes(Charsets.UTF_8));
+			Path planFile = fileSystem.getPath("C:\\plan.txt");
+			conversion.plan(sourceRoot, fileSystem.getPath("C:\\target")).write(planFile);
+			this.report = conversion.execute(Plan.read(planFile));
+			assertEquals(Arrays.asList(
+					"OK   : file C:\\source\\20150129_082558.jpg moved into C:\\target\\201501\\20150129\\20150129_082558.jpg",
+					"OK   : file C:\\source\\20150129_082616.jpg deleted because target exists with same content and name",
+					"OK   : there was no file remaining in directory C:\\source"
+			), report.getContent());
+			assertTrue(java.nio.file.Files.isRegularFile(targetRoot.resolve("20150129_082558.jpg")));
+			assertFalse(java.nio.file.Files.exists(sourceRoot));
+		}
+	}
+
+	@Test
+	public void movedToOtherFileStoreByCopy() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			Path sourceRoot = java.nio.file.Files.createDirectories(fileSystem.getPath("/source"));
+			Path sourceFile = java.nio.file.Files.write(sourceRoot.resolve("20150129_082558.jpg"), "abc".getBytes(Charsets.UTF_8));
+			java.nio.file.Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(1422516358000L));
+			java.nio.file.Files.write(sourceRoot.resolve("20150130_181055.jpg"), "jkl".getBytes(Charsets.UTF_8));
+			prepareTarget("201501/");
+			conversion.setCopyLanes(1, 0); // all files copied on the lane
+			conversion.setWorkers(2);
+			this.report = conversion.execute(sourceRoot, target.getRoot().toPath());
+			verifyTarget(
+					"OK   : file /source/20150129_082558.jpg moved into $TARGET$\\201501\\20150129\\20150129_082558.jpg (copied to other file store)",
+					"OK   : file /source/20150130_181055.jpg moved into $TARGET$\\201501\\20150130\\20150130_181055.jpg (copied to other file store)",
+					"OK   : there was no file remaining in directory /source"
+			);
+			assertExists("$TARGET$\\201501\\20150129\\20150129_082558.jpg","abc");
+			assertEquals(1422516358000L, new File(target.getRoot(),"201501/20150129/20150129_082558.jpg").lastModified());
+			assertEquals(6, report.getMetrics().getBytesCopied());
+		}
+	}
+
+	@Test
+	public void severalSourcesConvertedInOneRun() throws IOException {
+		try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+			Path phone = java.nio.file.Files.createDirectories(fileSystem.getPath("/phone"));
+			Path otherPhone = java.nio.file.Files.createDirectories(fileSystem.getPath("/otherphone"));
+			Path targetRoot = java.nio.file.Files.createDirectories(fileSystem.getPath("/target/201501"));
+			java.nio.file.Files.write(phone.resolve("20150129_082558.jpg"), "abc".getBytes(Charsets.UTF_8));
+			java.nio.file.Files.write(otherPhone.resolve("IMG_20150129_082558.jpg"), "abc".getBytes(Charsets.UTF_8));
+			java.nio.file.Files.write(otherPhone.resolve("IMG_20150129_090000.jpg"), "def".getBytes(Charsets.UTF_8));
+			Map<Path,Conversion> sources = new LinkedHashMap<>();
+			sources.put(phone, conversion);
+			sources.put(otherPhone, new HuaweiXiaomi1Conversion());
+			conversion.setWorkers(2);
+			this.report = conversion.execute(sources, targetRoot.getParent());
+			assertEquals(Arrays.asList(
+					"OK   : file /phone/20150129_082558.jpg moved into /target/201501/20150129/20150129_082558.jpg",
+					"OK   : file /otherphone/IMG_20150129_082558.jpg deleted because target exists with same content and different name [20150129_082558.jpg]",
+					"OK   : file /otherphone/IMG_20150129_090000.jpg moved into /target/201501/20150129/IMG_20150129_090000.jpg",
+					"OK   : there was no file remaining in directory /phone",
+					"OK   : there was no file remaining in directory /otherphone"
+			), report.getContent());
+			assertEquals(2, java.nio.file.Files.list(targetRoot.resolve("20150129")).count());
+			assertEquals(4, report.getMetrics().getListings()); // each source, target and month directory listed once
+			Path planFile = fileSystem.getPath("/plan.txt");
+			new Plan(Arrays.asList(phone, otherPhone), targetRoot.getParent(), new ArrayList<>(), new Task(), new RunMetrics(), null).write(planFile);
+			assertEquals(Arrays.asList(phone, otherPhone), Plan.read(planFile).getSources());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void interruptedRunFromOtherSourceMustBeCompletedFirst() throws IOException {
+		prepareSource("20150129_082558.jpg~abc");
+		prepareTarget("201501/");
+		Journal.start(conversion.plan(source.getRoot().toPath(), target.getRoot().toPath())).close(false);
+		conversion.execute(work.newFolder("other").toPath(), target.getRoot().toPath());
+	}
+
 	private void prepareSource(String... fileNames) {
 		prepare(source, fileNames);
 	}
@@ -199,7 +475,7 @@ public class Samsung1ConversionTest {
 	}
 
 	private void performConversion() {
-		this.report = conversion.execute(source.getRoot(), target.getRoot());
+		this.report = conversion.execute(source.getRoot().toPath(), target.getRoot().toPath());
 	}
 
 	private void verifyTarget(String... expectedReportContent) {
@@ -0,0 +1,152 @@
+package cz.zalusky.orgmedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import com.google.common.jimfs.WatchServiceConfiguration;
+
+public class WatcherTest {
+
+	private FileSystem fileSystem;
+
+	private Path source;
+
+	private Path target;
+
+	private Watcher watcher;
+
+	private Thread thread;
+
+	@Before
+	public void setUp() throws IOException {
+		fileSystem = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+				.setWatchServiceConfiguration(WatchServiceConfiguration.polling(10, TimeUnit.MILLISECONDS)).build());
+		source = Files.createDirectories(fileSystem.getPath("/sync"));
+		target = fileSystem.getPath("/library");
+		Files.createDirectories(target.resolve("201501"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (watcher != null) {
+			watcher.close();
+			thread.join();
+		}
+		fileSystem.close();
+	}
+
+	@Test
+	public void presentFilesConvertedAndSourceKept() throws Exception {
+		write("20150129_082558.jpg", "abc");
+		write("20150130_181055.jpg", "jkl");
+		start();
+		waitFor(() -> watcher.getBatches() == 1);
+		assertEquals("abc", read(target.resolve("201501/20150129/20150129_082558.jpg")));
+		assertEquals("jkl", read(target.resolve("201501/20150130/20150130_181055.jpg")));
+		assertTrue(Files.isDirectory(source));
+	}
+
+	@Test
+	public void fileConvertedWhenCompletelyWritten() throws Exception {
+		start();
+		Path file = write("20150129_082558.jpg", "a");
+		for (char c = 'b'; c <= 'f'; c++) {
+			Thread.sleep(50);
+			Files.write(file, String.valueOf(c).getBytes(Charsets.UTF_8), StandardOpenOption.APPEND);
+			assertTrue(Files.exists(file));
+		}
+		waitFor(() -> watcher.getBatches() == 1);
+		assertEquals("abcdef", read(target.resolve("201501/20150129/20150129_082558.jpg")));
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	public void burstConvertedInOneBatch() throws Exception {
+		start();
+		for (int i = 0; i < 10; i++) {
+			write(String.format("20150129_0826%02d.jpg", i), "content" + i);
+			Thread.sleep(20);
+		}
+		waitFor(() -> watcher.getBatches() == 1);
+		Thread.sleep(1000);
+		assertEquals(1, watcher.getBatches());
+		try (Stream<Path> moved = Files.list(target.resolve("201501/20150129"))) {
+			assertEquals(10, moved.count());
+		}
+	}
+
+	@Test
+	public void givenConversionNotChanged() throws Exception {
+		Samsung1Conversion conversion = new Samsung1Conversion();
+		start(conversion);
+		write("20150129_082558.jpg", "abc");
+		waitFor(() -> watcher.getBatches() == 1);
+		Path other = Files.createDirectories(fileSystem.getPath("/other"));
+		Files.write(other.resolve("20150130_181055.jpg"), "jkl".getBytes(Charsets.UTF_8));
+		conversion.execute(other, target);
+		assertEquals("jkl", read(target.resolve("201501/20150130/20150130_181055.jpg")));
+		assertFalse(Files.exists(other)); // deleted when emptied, unlike watched source
+		assertTrue(Files.isDirectory(source));
+	}
+
+	@Test
+	public void logsOfQuickBatchesKept() throws Exception {
+		start(new Samsung1Conversion() {
+			@Override
+			String getLogFileName() {
+				return "Samsung1Conversion-20150129-082558.log"; // batches finished in the same second
+			}
+		});
+		write("20150129_082558.jpg", "abc");
+		waitFor(() -> watcher.getBatches() == 1);
+		write("20150130_181055.jpg", "jkl");
+		waitFor(() -> watcher.getBatches() == 2);
+		assertTrue(read(target.resolve("Samsung1Conversion-20150129-082558.log")).contains("20150129_082558.jpg"));
+		assertTrue(read(target.resolve("Samsung1Conversion-20150129-082558-2.log")).contains("20150130_181055.jpg"));
+	}
+
+	private void start() {
+		start(new Samsung1Conversion());
+	}
+
+	private void start(Conversion conversion) {
+		watcher = new Watcher(conversion, source, target);
+		watcher.setQuietMillis(500);
+		thread = new Thread(watcher::run);
+		thread.start();
+	}
+
+	private Path write(String name, String content) throws IOException {
+		return Files.write(source.resolve(name), content.getBytes(Charsets.UTF_8));
+	}
+
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), Charsets.UTF_8);
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+}